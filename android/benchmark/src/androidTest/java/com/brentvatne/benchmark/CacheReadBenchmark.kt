@@ -0,0 +1,146 @@
+package com.brentvatne.benchmark
+
+import android.net.Uri
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import androidx.media3.common.C
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.database.StandaloneDatabaseProvider
+import androidx.media3.datasource.DataSource
+import androidx.media3.datasource.DataSpec
+import androidx.media3.datasource.FileDataSource
+import androidx.media3.datasource.cache.CacheDataSource
+import androidx.media3.datasource.cache.CacheWriter
+import androidx.media3.datasource.cache.NoOpCacheEvictor
+import androidx.media3.datasource.cache.SimpleCache
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.brentvatne.exoplayer.MappedFileDataSource
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.io.File
+import java.util.Random
+
+/**
+ * Reads of a local file and of its cached copy, through MappedFileDataSource versus FileDataSource.
+ * Files are in the page cache after the first iteration, so this measures the read path, not the storage.
+ */
+@UnstableApi
+@RunWith(AndroidJUnit4::class)
+class CacheReadBenchmark {
+    companion object {
+        private const val FILE_SIZE = 16 * 1024 * 1024
+        private const val RANDOM_READ_SIZE = 64 * 1024
+        private const val RANDOM_READS = 64
+        private const val CACHE_KEY = "benchmark"
+    }
+
+    @get:Rule
+    val benchmarkRule = BenchmarkRule()
+
+    private val context = InstrumentationRegistry.getInstrumentation().targetContext
+    private val buffer = ByteArray(64 * 1024)
+    private lateinit var directory: File
+    private lateinit var file: File
+    private lateinit var cache: SimpleCache
+
+    @Before
+    fun setUp() {
+        directory = File(context.cacheDir, "rnv-benchmark").apply { deleteRecursively() }
+        directory.mkdirs()
+        file = File(directory, "content.bin")
+        val content = ByteArray(FILE_SIZE)
+        Random(0).nextBytes(content)
+        file.writeBytes(content)
+
+        cache = SimpleCache(File(directory, "cache"), NoOpCacheEvictor(), StandaloneDatabaseProvider(context))
+        val writer = CacheDataSource.Factory()
+            .setCache(cache)
+            .setUpstreamDataSourceFactory(FileDataSource.Factory())
+            .createDataSource()
+        CacheWriter(writer, fileSpec(0, C.LENGTH_UNSET.toLong()), null, null).cache()
+    }
+
+    @After
+    fun tearDown() {
+        cache.release()
+        directory.deleteRecursively()
+    }
+
+    @Test
+    fun fileSequential_fileDataSource() = measureSequential(FileDataSource.Factory())
+
+    @Test
+    fun fileSequential_mappedFileDataSource() = measureSequential(MappedFileDataSource.Factory())
+
+    @Test
+    fun fileRandom_fileDataSource() = measureRandom(FileDataSource.Factory())
+
+    @Test
+    fun fileRandom_mappedFileDataSource() = measureRandom(MappedFileDataSource.Factory())
+
+    @Test
+    fun cacheSequential_fileDataSource() = measureSequential(cacheFactory(FileDataSource.Factory()))
+
+    @Test
+    fun cacheSequential_mappedFileDataSource() = measureSequential(cacheFactory(MappedFileDataSource.Factory()))
+
+    @Test
+    fun cacheRandom_fileDataSource() = measureRandom(cacheFactory(FileDataSource.Factory()))
+
+    @Test
+    fun cacheRandom_mappedFileDataSource() = measureRandom(cacheFactory(MappedFileDataSource.Factory()))
+
+    /** @return factory reading the cached copy of the file, like the caches of the library, with cacheReadFactory */
+    private fun cacheFactory(cacheReadFactory: DataSource.Factory): DataSource.Factory =
+        CacheDataSource.Factory()
+            .setCache(cache)
+            .setCacheReadDataSourceFactory(cacheReadFactory)
+            .setUpstreamDataSourceFactory(FileDataSource.Factory())
+            .setCacheWriteDataSinkFactory(null)
+
+    private fun fileSpec(position: Long, length: Long): DataSpec =
+        DataSpec.Builder()
+            .setUri(Uri.fromFile(file))
+            .setPosition(position)
+            .setLength(length)
+            .setKey(CACHE_KEY)
+            .build()
+
+    /** Whole file, read as a player loads progressive content */
+    private fun measureSequential(factory: DataSource.Factory) {
+        benchmarkRule.measureRepeated {
+            check(read(factory, fileSpec(0, C.LENGTH_UNSET.toLong())) == FILE_SIZE.toLong())
+        }
+    }
+
+    /** Small reads at random positions, each with its own data source, as seeks and segment loads do */
+    private fun measureRandom(factory: DataSource.Factory) {
+        val random = Random(0)
+        val positions = LongArray(RANDOM_READS) { random.nextInt(FILE_SIZE - RANDOM_READ_SIZE).toLong() }
+        benchmarkRule.measureRepeated {
+            for (position in positions) {
+                check(read(factory, fileSpec(position, RANDOM_READ_SIZE.toLong())) == RANDOM_READ_SIZE.toLong())
+            }
+        }
+    }
+
+    private fun read(factory: DataSource.Factory, dataSpec: DataSpec): Long {
+        val dataSource = factory.createDataSource()
+        var total = 0L
+        try {
+            dataSource.open(dataSpec)
+            while (true) {
+                val read = dataSource.read(buffer, 0, buffer.size)
+                if (read == C.RESULT_END_OF_INPUT) break
+                total += read
+            }
+        } finally {
+            dataSource.close()
+        }
+        return total
+    }
+}
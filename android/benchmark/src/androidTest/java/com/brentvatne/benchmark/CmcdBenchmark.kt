@@ -0,0 +1,106 @@
+package com.brentvatne.benchmark
+
+import android.net.Uri
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import androidx.media3.common.Format
+import androidx.media3.common.MediaItem
+import androidx.media3.common.MimeTypes
+import androidx.media3.common.TrackGroup
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.datasource.DataSpec
+import androidx.media3.exoplayer.trackselection.FixedTrackSelection
+import androidx.media3.exoplayer.upstream.CmcdConfiguration
+import androidx.media3.exoplayer.upstream.CmcdData
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.brentvatne.common.api.CMCDProps
+import com.brentvatne.exoplayer.CMCDConfig
+import com.google.common.collect.ImmutableListMultimap
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Per request cost of CMCD: custom data of CMCDConfig, and the CMCD headers media3 adds to each chunk request.
+ * Allocations are reported with the timings, getCustomData should not allocate.
+ */
+@UnstableApi
+@RunWith(AndroidJUnit4::class)
+class CmcdBenchmark {
+    @get:Rule
+    val benchmarkRule = BenchmarkRule()
+
+    private val props = CMCDProps(
+        cmcdObject = listOf("com-example-object" to 42),
+        cmcdRequest = listOf("com-example-request" to "lecture"),
+        cmcdSession = listOf("com-example-course" to "course-1234", "com-example-session" to 1.5),
+        cmcdStatus = listOf("com-example-status" to 0),
+        mode = 0
+    )
+    private val mediaItem = MediaItem.Builder().setMediaId("lecture-1").setUri("https://example.com/lecture.m3u8").build()
+    private val cmcdConfiguration = CMCDConfig(props, "session-id").toCmcdConfigurationFactory().createCmcdConfiguration(mediaItem)
+    private val dataSpec = DataSpec(Uri.parse("https://example.com/segment-1.m4s"))
+    private val trackSelection = FixedTrackSelection(
+        TrackGroup(
+            Format.Builder()
+                .setSampleMimeType(MimeTypes.VIDEO_H264)
+                .setPeakBitrate(2_000_000)
+                .setWidth(1280)
+                .setHeight(720)
+                .build()
+        ),
+        0
+    )
+
+    @Test
+    fun customData() {
+        val requestConfig = cmcdConfiguration.requestConfig
+        benchmarkRule.measureRepeated {
+            check(!requestConfig.customData.isEmpty)
+        }
+    }
+
+    /** Custom data formatted on each request, as before CMCDConfig formatted it once per props */
+    @Test
+    fun customData_formattedPerRequest() {
+        benchmarkRule.measureRepeated {
+            check(!formatCustomData(props).isEmpty)
+        }
+    }
+
+    /** CMCD data of a chunk request added to its data spec as headers, including custom data */
+    @Test
+    fun chunkRequestHeaders() {
+        benchmarkRule.measureRepeated {
+            val cmcdDataSpec = CmcdData.Factory(
+                cmcdConfiguration,
+                trackSelection,
+                /* bufferedDurationUs= */ 10_000_000,
+                /* playbackRate= */ 1f,
+                CmcdData.Factory.STREAMING_FORMAT_HLS,
+                /* isLive= */ false,
+                /* didRebuffer= */ false,
+                /* isBufferEmpty= */ false
+            )
+                .setObjectType(CmcdData.Factory.OBJECT_TYPE_VIDEO_ONLY)
+                .setChunkDurationUs(4_000_000)
+                .createCmcdData()
+                .addToDataSpec(dataSpec)
+            check(cmcdDataSpec.httpRequestHeaders.isNotEmpty())
+        }
+    }
+
+    private fun formatCustomData(props: CMCDProps): ImmutableListMultimap<String, String> =
+        ImmutableListMultimap.builder<String, String>().apply {
+            listOf(
+                CmcdConfiguration.KEY_CMCD_OBJECT to props.cmcdObject,
+                CmcdConfiguration.KEY_CMCD_REQUEST to props.cmcdRequest,
+                CmcdConfiguration.KEY_CMCD_SESSION to props.cmcdSession,
+                CmcdConfiguration.KEY_CMCD_STATUS to props.cmcdStatus
+            ).forEach { (key, dataList) ->
+                dataList.forEach { (dataKey, dataValue) ->
+                    put(key, if (dataValue is String) "$dataKey=\"$dataValue\"" else "$dataKey=$dataValue")
+                }
+            }
+        }.build()
+}
@@ -2,11 +2,17 @@ package androidx.media3.exoplayer.dash;
 
 import android.net.Uri;
 
+import androidx.media3.common.Format;
 import androidx.media3.datasource.DataSource;
 import androidx.media3.exoplayer.dash.manifest.DashManifest;
+import androidx.media3.exoplayer.dash.manifest.Period;
 
 public class DashUtil {
     public static DashManifest loadManifest(DataSource ds, Uri uri) {
         return null;
     }
+
+    public static Format loadFormatWithDrmInitData(DataSource ds, Period period) {
+        return null;
+    }
 }
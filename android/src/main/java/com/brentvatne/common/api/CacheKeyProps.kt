@@ -0,0 +1,30 @@
+package com.brentvatne.common.api
+
+import com.brentvatne.common.toolbox.ReactBridgeUtils.safeGetArray
+import com.brentvatne.common.toolbox.ReactBridgeUtils.safeGetBool
+import com.facebook.react.bridge.ReadableMap
+
+/**
+ * Rules used to build cache keys of a source, so that URLs which differ only by their signature share cached data
+ */
+data class CacheKeyProps(
+    /** query parameters removed from the uri, like signatures or expiry dates */
+    val stripQueryParameters: List<String> = emptyList(),
+    /** identify resources by the metadata id of the source instead of the uri host */
+    val useMediaId: Boolean = false
+) {
+    companion object {
+        private const val PROP_STRIP_QUERY_PARAMETERS = "stripQueryParameters"
+        private const val PROP_USE_MEDIA_ID = "useMediaId"
+
+        @JvmStatic
+        fun parse(src: ReadableMap?): CacheKeyProps? {
+            if (src == null) return null
+            val parameters = safeGetArray(src, PROP_STRIP_QUERY_PARAMETERS)
+            return CacheKeyProps(
+                stripQueryParameters = (0 until (parameters?.size() ?: 0)).mapNotNull { parameters?.getString(it) },
+                useMediaId = safeGetBool(src, PROP_USE_MEDIA_ID, false)
+            )
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.brentvatne.common.api
+
+import com.brentvatne.common.toolbox.ReactBridgeUtils.safeGetInt
+import com.facebook.react.bridge.ReadableMap
+
+/**
+ * Parallel range loading of progressive content: the file is loaded by several concurrent range requests
+ */
+data class ParallelRangeProps(
+    /** maximum number of concurrent range requests */
+    val maxConcurrency: Int = DEFAULT_MAX_CONCURRENCY,
+    /** initial size of a range, then adapted to the measured throughput */
+    val chunkSizeKB: Int = DEFAULT_CHUNK_SIZE_KB
+) {
+    companion object {
+        private const val PROP_MAX_CONCURRENCY = "maxConcurrency"
+        private const val PROP_CHUNK_SIZE_KB = "chunkSizeKB"
+        private const val DEFAULT_MAX_CONCURRENCY = 4
+        private const val DEFAULT_CHUNK_SIZE_KB = 512
+
+        @JvmStatic
+        fun parse(src: ReadableMap?): ParallelRangeProps? {
+            if (src == null) return null
+            return ParallelRangeProps(
+                maxConcurrency = safeGetInt(src, PROP_MAX_CONCURRENCY, DEFAULT_MAX_CONCURRENCY).coerceIn(1, 8),
+                chunkSizeKB = safeGetInt(src, PROP_CHUNK_SIZE_KB, DEFAULT_CHUNK_SIZE_KB).coerceIn(64, 4096)
+            )
+        }
+    }
+}
@@ -34,6 +34,9 @@ class Source {
     /** Specification if the ReactExoplayerView should use the central player */
     var useCentralPlayer: Boolean = false
 
+    /** Disable the video track while playing in background, outside of picture in picture and multi window */
+    var suspendVideoInBackground: Boolean = false
+
     /** True if source is a local JS asset */
     var isLocalAssetFile: Boolean = false
 
@@ -79,6 +82,16 @@ class Source {
      */
     var cmcdProps: CMCDProps? = null
 
+    /**
+     * Cache key rules linked to the source
+     */
+    var cacheKeyProps: CacheKeyProps? = null
+
+    /**
+     * Parallel range loading of progressive content, disabled when null
+     */
+    var parallelRangeProps: ParallelRangeProps? = null
+
     /**
      * Ads playback properties
      */
@@ -108,6 +121,8 @@ class Source {
                 drmProps == other.drmProps &&
                 contentStartTime == other.contentStartTime &&
                 cmcdProps == other.cmcdProps &&
+                cacheKeyProps == other.cacheKeyProps &&
+                parallelRangeProps == other.parallelRangeProps &&
                 sideLoadedTextTracks == other.sideLoadedTextTracks &&
                 adsProps == other.adsProps &&
                 minLoadRetryCount == other.minLoadRetryCount &&
@@ -180,6 +195,7 @@ class Source {
         private const val PROP_SRC_URI = "uri"
         private const val PROP_SRC_USE_CENTRAL_PLAYER = "useCentralPlayer"
         private const val PROP_SRC_IS_LOCAL_ASSET_FILE = "isLocalAssetFile"
+        private const val PROP_SRC_SUSPEND_VIDEO_IN_BACKGROUND = "suspendVideoInBackground"
         private const val PROP_SRC_IS_ASSET = "isAsset"
         private const val PROP_SRC_START_POSITION = "startPosition"
         private const val PROP_SRC_CROP_START = "cropStart"
@@ -190,6 +206,8 @@ class Source {
         private const val PROP_SRC_HEADERS = "requestHeaders"
         private const val PROP_SRC_DRM = "drm"
         private const val PROP_SRC_CMCD = "cmcd"
+        private const val PROP_SRC_CACHE_KEY = "cacheKey"
+        private const val PROP_SRC_PARALLEL_RANGES = "parallelRanges"
         private const val PROP_SRC_ADS = "ad"
         private const val PROP_SRC_TEXT_TRACKS_ALLOW_CHUNKLESS_PREPARATION = "textTracksAllowChunklessPreparation"
         private const val PROP_SRC_TEXT_TRACKS = "textTracks"
@@ -250,14 +268,22 @@ class Source {
                 source.uri = uri
                 source.useCentralPlayer = safeGetBool(src, PROP_SRC_USE_CENTRAL_PLAYER, false)
                 source.isLocalAssetFile = safeGetBool(src, PROP_SRC_IS_LOCAL_ASSET_FILE, false)
+                source.suspendVideoInBackground = safeGetBool(src, PROP_SRC_SUSPEND_VIDEO_IN_BACKGROUND, false)
                 source.isAsset = safeGetBool(src, PROP_SRC_IS_ASSET, false)
                 source.startPositionMs = safeGetInt(src, PROP_SRC_START_POSITION, -1)
                 source.cropStartMs = safeGetInt(src, PROP_SRC_CROP_START, -1)
                 source.cropEndMs = safeGetInt(src, PROP_SRC_CROP_END, -1)
                 source.contentStartTime = safeGetInt(src, PROP_SRC_CONTENT_START_TIME, -1)
                 source.extension = safeGetString(src, PROP_SRC_TYPE, null)
-                source.drmProps = parse(safeGetMap(src, PROP_SRC_DRM))
+                source.drmProps = parse(safeGetMap(src, PROP_SRC_DRM))?.also { drm ->
+                    if (drm.contentId.isNullOrEmpty()) {
+                        // without explicit content id, the uri identifies the content
+                        drm.contentId = uriString
+                    }
+                }
                 source.cmcdProps = CMCDProps.parse(safeGetMap(src, PROP_SRC_CMCD))
+                source.cacheKeyProps = CacheKeyProps.parse(safeGetMap(src, PROP_SRC_CACHE_KEY))
+                source.parallelRangeProps = ParallelRangeProps.parse(safeGetMap(src, PROP_SRC_PARALLEL_RANGES))
                 if (BuildConfig.USE_EXOPLAYER_IMA) {
                     source.adsProps = AdsProps.parse(safeGetMap(src, PROP_SRC_ADS))
                 }
@@ -43,7 +43,9 @@ enum class EventTypes(val eventName: String) {
     EVENT_TEXT_TRACK_DATA_CHANGED("onTextTrackDataChanged"),
     EVENT_VIDEO_TRACKS("onVideoTracks"),
     EVENT_ON_RECEIVE_AD_EVENT("onReceiveAdEvent"),
-    EVENT_PICTURE_IN_PICTURE_STATUS_CHANGED("onPictureInPictureStatusChanged");
+    EVENT_PICTURE_IN_PICTURE_STATUS_CHANGED("onPictureInPictureStatusChanged"),
+    EVENT_BACKGROUND_VIDEO_RESUME("onBackgroundVideoResume"),
+    EVENT_STARTUP_METRICS("onStartupMetrics");
 
     companion object {
         fun toMap() =
@@ -92,6 +94,8 @@ class VideoEventEmitter {
     lateinit var onTextTrackDataChanged: (textTrackData: String) -> Unit
     lateinit var onReceiveAdEvent: (adEvent: String, adData: Map<String?, String?>?) -> Unit
     lateinit var onPictureInPictureStatusChanged: (isActive: Boolean) -> Unit
+    lateinit var onBackgroundVideoResume: (resumeDurationMs: Long) -> Unit
+    lateinit var onStartupMetrics: (phases: Map<String, Double>) -> Unit
 
     fun addEventEmitters(reactContext: ThemedReactContext, view: ReactExoplayerView) {
         val dispatcher = UIManagerHelper.getEventDispatcherForReactTag(reactContext, view.id)
@@ -285,6 +289,16 @@ class VideoEventEmitter {
                     putBoolean("isActive", isActive)
                 }
             }
+            onBackgroundVideoResume = { resumeDurationMs ->
+                event.dispatch(EventTypes.EVENT_BACKGROUND_VIDEO_RESUME) {
+                    putDouble("resumeDuration", resumeDurationMs.toDouble())
+                }
+            }
+            onStartupMetrics = { phases ->
+                event.dispatch(EventTypes.EVENT_STARTUP_METRICS) {
+                    phases.forEach { (phase, durationMs) -> putDouble(phase, durationMs) }
+                }
+            }
         }
     }
 
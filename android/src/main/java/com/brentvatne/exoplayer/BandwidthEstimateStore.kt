@@ -0,0 +1,206 @@
+package com.brentvatne.exoplayer
+
+import android.annotation.SuppressLint
+import android.content.Context
+import android.net.wifi.WifiManager
+import android.os.Handler
+import android.os.Looper
+import android.telephony.TelephonyManager
+import androidx.media3.common.C
+import androidx.media3.common.util.NetworkTypeObserver
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.exoplayer.upstream.BandwidthMeter
+import androidx.media3.exoplayer.upstream.DefaultBandwidthMeter
+import com.brentvatne.common.toolbox.DebugLog
+import kotlin.math.sqrt
+
+/**
+ * Bandwidth meter shared by the central player and all views, with bandwidth estimates persisted per network.
+ *
+ * Networks are identified by their type and a hash of the Wi-Fi SSID or the mobile operator.
+ * For each network the last samples are kept and the estimate is their weighted median (same weighting as DefaultBandwidthMeter).
+ * Estimates are saved when playback sessions end and used as initial estimates of the meter on next app start,
+ * so ABR starts at the right rung instead of a fixed guess.
+ */
+@UnstableApi
+object BandwidthEstimateStore {
+    private const val TAG = "BandwidthEstimateStore"
+    private const val PREFERENCES_NAME = "RNVBandwidthEstimates"
+    private const val MAX_SAMPLES = 20
+    private const val MAX_NETWORKS = 16
+
+    private class Sample(val weight: Int, val bitrate: Long)
+
+    private val lock = Any()
+    private var meter: DefaultBandwidthMeter? = null
+    private var defaultInitialBitrate: Long? = null
+
+    // access ordered, the least recently used network is dropped first
+    private val samples = LinkedHashMap<String, ArrayDeque<Sample>>(MAX_NETWORKS, 0.75f, true)
+    private var isLoaded = false
+    private var isDirty = false
+    private var currentNetworkKey: String? = null
+
+    private val sampleListener = BandwidthMeter.EventListener { elapsedMs, bytesTransferred, _ ->
+        if (elapsedMs > 0 && bytesTransferred > 0) {
+            addSample(sqrt(bytesTransferred.toDouble()).toInt(), bytesTransferred * 8000 / elapsedMs)
+        }
+    }
+
+    private lateinit var appContext: Context
+
+    /** @return the shared meter, created with the stored estimates on first call */
+    @JvmStatic
+    fun getBandwidthMeter(context: Context): DefaultBandwidthMeter {
+        synchronized(lock) {
+            meter?.let { return it }
+            appContext = context.applicationContext
+            load()
+            NetworkTypeObserver.getInstance(appContext).register {
+                synchronized(lock) { currentNetworkKey = null }
+            }
+            val newMeter = buildMeter()
+            newMeter.addEventListener(Handler(Looper.getMainLooper()), sampleListener)
+            meter = newMeter
+            return newMeter
+        }
+    }
+
+    /**
+     * Initial estimate used for networks without stored estimate.
+     * The meter is only rebuilt if it did not learn anything yet, learned estimates are never dropped.
+     */
+    @JvmStatic
+    fun setDefaultInitialBitrate(context: Context, bitrate: Long) {
+        synchronized(lock) {
+            if (defaultInitialBitrate == bitrate) return
+            defaultInitialBitrate = bitrate
+            val current = meter ?: return
+            if (isDirty || estimate(networkKey()) != null) {
+                DebugLog.d(TAG, "keeping learned bandwidth estimate, initial bitrate $bitrate ignored")
+                return
+            }
+            current.removeEventListener(sampleListener)
+            meter = null
+        }
+        getBandwidthMeter(context)
+    }
+
+    /** Persist estimates learned since last save, to be called when a playback session ends */
+    @JvmStatic
+    fun save() {
+        synchronized(lock) {
+            if (!isDirty) return
+            isDirty = false
+            val editor = appContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE).edit().clear()
+            for ((key, networkSamples) in samples) {
+                editor.putString(key, networkSamples.joinToString(",") { "${it.weight}:${it.bitrate}" })
+            }
+            editor.apply()
+        }
+    }
+
+    private fun buildMeter(): DefaultBandwidthMeter {
+        val builder = DefaultBandwidthMeter.Builder(appContext)
+        defaultInitialBitrate?.let { builder.setInitialBitrateEstimate(it) }
+        // least recently used first, so that each network type gets its most recent estimate
+        for (key in samples.keys.toList()) {
+            estimate(key)?.let { builder.setInitialBitrateEstimate(networkTypeOf(key), it) }
+        }
+        val key = networkKey()
+        estimate(key)?.let {
+            DebugLog.d(TAG, "initial bandwidth estimate $it for $key")
+            builder.setInitialBitrateEstimate(networkTypeOf(key), it)
+        }
+        return builder.build()
+    }
+
+    private fun addSample(weight: Int, bitrate: Long) {
+        synchronized(lock) {
+            val networkSamples = samples.getOrPut(networkKey()) { ArrayDeque() }
+            networkSamples.addLast(Sample(weight, bitrate))
+            if (networkSamples.size > MAX_SAMPLES) {
+                networkSamples.removeFirst()
+            }
+            trimNetworks()
+            isDirty = true
+        }
+    }
+
+    /** weighted median of the samples of key */
+    private fun estimate(key: String): Long? {
+        val networkSamples = samples[key]
+        if (networkSamples.isNullOrEmpty()) return null
+        val sorted = networkSamples.sortedBy { it.bitrate }
+        val halfWeight = sorted.sumOf { it.weight } / 2.0
+        var weight = 0
+        for (sample in sorted) {
+            weight += sample.weight
+            if (weight >= halfWeight) return sample.bitrate
+        }
+        return sorted.last().bitrate
+    }
+
+    private fun load() {
+        if (isLoaded) return
+        isLoaded = true
+        val preferences = appContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE)
+        for ((key, value) in preferences.all) {
+            val networkSamples = ArrayDeque<Sample>()
+            (value as? String)?.split(",")?.forEach {
+                val parts = it.split(":")
+                val weight = parts.getOrNull(0)?.toIntOrNull()
+                val bitrate = parts.getOrNull(1)?.toLongOrNull()
+                if (weight != null && bitrate != null) {
+                    networkSamples.addLast(Sample(weight, bitrate))
+                }
+            }
+            if (networkSamples.isNotEmpty()) {
+                samples[key] = networkSamples
+            }
+        }
+        trimNetworks()
+    }
+
+    private fun trimNetworks() {
+        while (samples.size > MAX_NETWORKS) {
+            samples.remove(samples.keys.first())
+        }
+    }
+
+    private fun networkTypeOf(key: String): Int = key.substringBefore('|').toIntOrNull() ?: C.NETWORK_TYPE_UNKNOWN
+
+    /** @return key of the current network: network type, then hash of the SSID or operator */
+    private fun networkKey(): String {
+        currentNetworkKey?.let { return it }
+        val networkType = NetworkTypeObserver.getInstance(appContext).networkType
+        val networkId = when (networkType) {
+            C.NETWORK_TYPE_WIFI -> wifiId()
+            C.NETWORK_TYPE_2G,
+            C.NETWORK_TYPE_3G,
+            C.NETWORK_TYPE_4G,
+            C.NETWORK_TYPE_5G_NSA,
+            C.NETWORK_TYPE_5G_SA,
+            C.NETWORK_TYPE_CELLULAR_UNKNOWN -> operatorId()
+            else -> ""
+        }
+        return "$networkType|$networkId".also { currentNetworkKey = it }
+    }
+
+    @SuppressLint("MissingPermission")
+    @Suppress("DEPRECATION")
+    private fun wifiId(): String =
+        try {
+            val wifiManager = appContext.getSystemService(Context.WIFI_SERVICE) as WifiManager
+            val ssid = wifiManager.connectionInfo?.ssid
+            // SSID is only available with location permission, it is never stored in clear
+            if (ssid == null || ssid == WifiManager.UNKNOWN_SSID) "" else Integer.toHexString(ssid.hashCode())
+        } catch (e: SecurityException) {
+            ""
+        }
+
+    private fun operatorId(): String {
+        val telephonyManager = appContext.getSystemService(Context.TELEPHONY_SERVICE) as? TelephonyManager
+        return telephonyManager?.networkOperator.orEmpty()
+    }
+}
@@ -6,16 +6,24 @@ import com.brentvatne.common.api.CMCDProps
 import com.brentvatne.common.toolbox.DebugLog
 import com.google.common.collect.ImmutableListMultimap
 
-class CMCDConfig(private val props: CMCDProps) {
+/**
+ * CMCD configuration of a source.
+ * Custom data of props is formatted once and returned as is for each chunk request.
+ * @param sessionId CMCD session id, stable while the player plays
+ */
+class CMCDConfig(val props: CMCDProps, val sessionId: String) {
+    private val customData: ImmutableListMultimap<String, String> = buildCustomData()
+    private val requestConfig = object : CmcdConfiguration.RequestConfig {
+        override fun getCustomData(): ImmutableListMultimap<String, String> = customData
+    }
+
     fun toCmcdConfigurationFactory(): CmcdConfiguration.Factory = CmcdConfiguration.Factory(::createCmcdConfiguration)
 
     private fun createCmcdConfiguration(mediaItem: MediaItem): CmcdConfiguration =
         CmcdConfiguration(
-            java.util.UUID.randomUUID().toString(),
+            sessionId,
             mediaItem.mediaId,
-            object : CmcdConfiguration.RequestConfig {
-                override fun getCustomData(): ImmutableListMultimap<String, String> = buildCustomData()
-            },
+            requestConfig,
             intToCmcdMode(props.mode)
         )
 
@@ -0,0 +1,78 @@
+package com.brentvatne.exoplayer
+
+import android.net.Uri
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.datasource.DataSource
+import androidx.media3.datasource.DataSpec
+import androidx.media3.datasource.TransferListener
+
+/**
+ * DataSource reading from upstream until the cache is ready, then through the cache.
+ * The choice is made at each open, so players prepared while the cache index was loading switch to cached reads
+ * without being prepared again, and go back to upstream when the cache is released.
+ */
+@UnstableApi
+class CacheSwitchingDataSource(
+    private val upstreamFactory: DataSource.Factory,
+    /** returns the cache data source factory, null while the cache is not ready or once it is released */
+    private val cacheFactoryProvider: () -> DataSource.Factory?
+) : DataSource {
+
+    class Factory(private val upstreamFactory: DataSource.Factory, private val cacheFactoryProvider: () -> DataSource.Factory?) : DataSource.Factory {
+        override fun createDataSource(): DataSource = CacheSwitchingDataSource(upstreamFactory, cacheFactoryProvider)
+    }
+
+    private val transferListeners = ArrayList<TransferListener>()
+    private var upstream: DataSource? = null
+    private var cacheDataSource: DataSource? = null
+
+    // factory of cacheDataSource, a new factory means a new cache instance
+    private var cacheFactory: DataSource.Factory? = null
+    private var current: DataSource? = null
+
+    override fun addTransferListener(transferListener: TransferListener) {
+        transferListeners.add(transferListener)
+        upstream?.addTransferListener(transferListener)
+        cacheDataSource?.addTransferListener(transferListener)
+    }
+
+    override fun open(dataSpec: DataSpec): Long {
+        val dataSource = getCacheDataSource() ?: getUpstream()
+        current = dataSource
+        return dataSource.open(dataSpec)
+    }
+
+    override fun read(buffer: ByteArray, offset: Int, length: Int): Int = current!!.read(buffer, offset, length)
+
+    override fun getUri(): Uri? = current?.uri
+
+    override fun getResponseHeaders(): Map<String, List<String>> = current?.responseHeaders ?: emptyMap()
+
+    override fun close() {
+        try {
+            current?.close()
+        } finally {
+            current = null
+        }
+    }
+
+    private fun getCacheDataSource(): DataSource? {
+        val factory = cacheFactoryProvider() ?: return null
+        if (factory === cacheFactory) {
+            cacheDataSource?.let { return it }
+        }
+        val dataSource = factory.createDataSource()
+        transferListeners.forEach { dataSource.addTransferListener(it) }
+        cacheFactory = factory
+        cacheDataSource = dataSource
+        return dataSource
+    }
+
+    private fun getUpstream(): DataSource {
+        upstream?.let { return it }
+        val dataSource = upstreamFactory.createDataSource()
+        transferListeners.forEach { dataSource.addTransferListener(it) }
+        upstream = dataSource
+        return dataSource
+    }
+}
@@ -115,7 +115,10 @@ public class CentralizedPlaybackManager extends Service implements ExoPlayer {
 
         // Build the player
         Log.d(TAG, "Setting up the player on " + this.getApplicationContext());
-        this.player = new ExoPlayer.Builder(this).setMediaSourceFactory(getCustomMediaSourceFactory()).build();
+        this.player = new ExoPlayer.Builder(this)
+                .setMediaSourceFactory(getCustomMediaSourceFactory())
+                .setBandwidthMeter(BandwidthEstimateStore.getBandwidthMeter(this))
+                .build();
         this.player.setAudioAttributes(AudioAttributes.DEFAULT, true);
     }
 
@@ -229,6 +232,7 @@ public class CentralizedPlaybackManager extends Service implements ExoPlayer {
             super.onDestroy();
             instance = null;
             player.release();
+            BandwidthEstimateStore.save();
         }
         Log.d(TAG, "CentralizedPlaybackManager destroyed");
     }
@@ -0,0 +1,237 @@
+package com.brentvatne.exoplayer
+
+import android.content.Context
+import android.media.MediaCodecInfo
+import android.media.MediaCodecList
+import android.os.Build
+import com.brentvatne.common.toolbox.DebugLog
+import org.json.JSONArray
+import org.json.JSONObject
+import java.io.File
+import java.util.Locale
+import java.util.concurrent.Executors
+
+/**
+ * Decoder capabilities of the device, indexed by mime type.
+ * The codec list is scanned once per OS build on a background thread and stored on disk,
+ * capability queries are then answered from memory without instantiating MediaCodecList.
+ */
+object CodecCapabilityIndex {
+    private const val TAG = "CodecCapabilityIndex"
+    private const val FILE_NAME = "RNVCodecCapabilities.json"
+
+    // sizes used to measure the maximum pixel rate of video decoders
+    private val REFERENCE_SIZES = arrayOf(intArrayOf(3840, 2160), intArrayOf(2560, 1440), intArrayOf(1920, 1080), intArrayOf(1280, 720))
+
+    class Decoder(
+        val name: String,
+        val mimeType: String,
+        val isHardwareAccelerated: Boolean,
+        val maxWidth: Int,
+        val maxHeight: Int,
+        val maxFrameRate: Double,
+        val maxPixelRate: Double,
+        /** supported profiles and their maximum level */
+        val profileLevels: Map<Int, Int>
+    ) {
+        fun isVideo(): Boolean = maxWidth > 0
+
+        fun supports(width: Int, height: Int, frameRate: Float, profile: Int?, level: Int?): Boolean {
+            if (isVideo() && width > 0 && height > 0) {
+                // decoders usually handle rotated content
+                val fits = (width <= maxWidth && height <= maxHeight) || (height <= maxWidth && width <= maxHeight)
+                if (!fits) return false
+                if (frameRate > 0 && (frameRate > maxFrameRate || width.toDouble() * height * frameRate > maxPixelRate)) return false
+            }
+            // profiles the decoder does not list are accepted, decoders often handle unlisted compatible profiles
+            // (constrained baseline AVC for instance, which media3 special-cases)
+            val maxLevel = if (profile != null) profileLevels[profile] else null
+            if (maxLevel != null && level != null && level > maxLevel) return false
+            return true
+        }
+    }
+
+    private val executor = Executors.newSingleThreadExecutor()
+
+    @Volatile
+    private var decoders: Map<String, List<Decoder>>? = null
+
+    /** Load or compute the index in background */
+    @JvmStatic
+    fun ensureLoaded(context: Context) {
+        if (decoders != null) return
+        val appContext = context.applicationContext
+        executor.execute { getDecoders(appContext) }
+    }
+
+    /** @return true once the index is in memory, queries then do not block */
+    @JvmStatic
+    fun isLoaded(): Boolean = decoders != null
+
+    /** @return decoders of mimeType, hardware accelerated ones first */
+    @JvmStatic
+    fun getDecoders(context: Context, mimeType: String): List<Decoder> =
+        getDecoders(context)[mimeType.lowercase(Locale.US)] ?: emptyList()
+
+    /** @return true if a decoder of mimeType supports the given size, frame rate and profile */
+    @JvmStatic
+    @JvmOverloads
+    fun isSupported(context: Context, mimeType: String, width: Int, height: Int, frameRate: Float, profile: Int? = null, level: Int? = null): Boolean =
+        findDecoder(context, mimeType, width, height, frameRate, profile, level) != null
+
+    /** @return the first decoder supporting the given format, preferring hardware accelerated ones */
+    @JvmStatic
+    @JvmOverloads
+    fun findDecoder(context: Context, mimeType: String, width: Int, height: Int, frameRate: Float, profile: Int? = null, level: Int? = null): Decoder? =
+        getDecoders(context, mimeType).firstOrNull { it.supports(width, height, frameRate, profile, level) }
+
+    /** @return all indexed decoders */
+    @JvmStatic
+    fun getAllDecoders(context: Context): List<Decoder> = getDecoders(context).values.flatten()
+
+    @Synchronized
+    private fun getDecoders(context: Context): Map<String, List<Decoder>> {
+        decoders?.let { return it }
+        val file = File(context.applicationContext.filesDir, FILE_NAME)
+        val index = read(file) ?: scan().also { write(file, it) }
+        decoders = index
+        return index
+    }
+
+    private fun scan(): Map<String, List<Decoder>> {
+        val start = System.currentTimeMillis()
+        val index = HashMap<String, MutableList<Decoder>>()
+        for (codecInfo in MediaCodecList(MediaCodecList.REGULAR_CODECS).codecInfos) {
+            if (codecInfo.isEncoder) continue
+            for (type in codecInfo.supportedTypes) {
+                try {
+                    val decoder = buildDecoder(codecInfo, type)
+                    index.getOrPut(decoder.mimeType) { ArrayList() }.add(decoder)
+                } catch (e: Exception) {
+                    DebugLog.w(TAG, "cannot read capabilities of ${codecInfo.name} for $type: $e")
+                }
+            }
+        }
+        // stable sort, keeps the platform order within hardware and software decoders
+        index.values.forEach { list -> list.sortBy { !it.isHardwareAccelerated } }
+        DebugLog.d(TAG, "scanned ${index.size} mime types in ${System.currentTimeMillis() - start}ms")
+        return index
+    }
+
+    private fun buildDecoder(codecInfo: MediaCodecInfo, type: String): Decoder {
+        val capabilities = codecInfo.getCapabilitiesForType(type)
+        val profileLevels = HashMap<Int, Int>()
+        for (profileLevel in capabilities.profileLevels) {
+            profileLevels[profileLevel.profile] = maxOf(profileLevels[profileLevel.profile] ?: 0, profileLevel.level)
+        }
+        val video = capabilities.videoCapabilities
+        var maxWidth = 0
+        var maxHeight = 0
+        var maxFrameRate = 0.0
+        var maxPixelRate = 0.0
+        if (video != null) {
+            maxWidth = video.supportedWidths.upper
+            maxHeight = video.supportedHeights.upper
+            maxFrameRate = video.supportedFrameRates.upper.toDouble()
+            for (size in REFERENCE_SIZES) {
+                if (video.isSizeSupported(size[0], size[1])) {
+                    val rate = size[0].toDouble() * size[1] * video.getSupportedFrameRatesFor(size[0], size[1]).upper
+                    maxPixelRate = maxOf(maxPixelRate, rate)
+                }
+            }
+            if (maxPixelRate == 0.0) {
+                // smaller than all reference sizes
+                maxPixelRate = maxWidth.toDouble() * maxHeight * maxFrameRate
+            }
+        }
+        return Decoder(
+            codecInfo.name,
+            type.lowercase(Locale.US),
+            isHardwareAccelerated(codecInfo),
+            maxWidth,
+            maxHeight,
+            maxFrameRate,
+            maxPixelRate,
+            profileLevels
+        )
+    }
+
+    private fun isHardwareAccelerated(codecInfo: MediaCodecInfo): Boolean {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return codecInfo.isHardwareAccelerated
+        }
+        // Same heuristic as media3 for older versions
+        val name = codecInfo.name.lowercase(Locale.US)
+        return !(name.startsWith("arc.") || name.startsWith("omx.google.") || name.startsWith("omx.ffmpeg.") ||
+            (name.startsWith("omx.sec.") && name.contains(".sw.")) || name == "omx.qcom.video.decoder.hevcswvdec" ||
+            name.startsWith("c2.android.") || name.startsWith("c2.google.") ||
+            (!name.startsWith("omx.") && !name.startsWith("c2.")))
+    }
+
+    private fun read(file: File): Map<String, List<Decoder>>? {
+        if (!file.exists()) return null
+        return try {
+            val json = JSONObject(file.readText())
+            if (json.optString("fingerprint") != Build.FINGERPRINT) {
+                DebugLog.d(TAG, "OS build changed, rescanning codecs")
+                return null
+            }
+            val index = HashMap<String, List<Decoder>>()
+            val mimeTypes = json.getJSONObject("decoders")
+            for (mimeType in mimeTypes.keys()) {
+                val array = mimeTypes.getJSONArray(mimeType)
+                index[mimeType] = (0 until array.length()).map { fromJson(mimeType, array.getJSONObject(it)) }
+            }
+            index
+        } catch (e: Exception) {
+            DebugLog.w(TAG, "cannot read codec index: $e")
+            null
+        }
+    }
+
+    private fun write(file: File, index: Map<String, List<Decoder>>) {
+        try {
+            val mimeTypes = JSONObject()
+            for ((mimeType, list) in index) {
+                mimeTypes.put(mimeType, JSONArray(list.map { toJson(it) }))
+            }
+            val json = JSONObject()
+                .put("fingerprint", Build.FINGERPRINT)
+                .put("decoders", mimeTypes)
+            file.writeText(json.toString())
+        } catch (e: Exception) {
+            DebugLog.w(TAG, "cannot write codec index: $e")
+        }
+    }
+
+    private fun toJson(decoder: Decoder): JSONObject {
+        val profileLevels = JSONObject()
+        decoder.profileLevels.forEach { (profile, level) -> profileLevels.put(profile.toString(), level) }
+        return JSONObject()
+            .put("name", decoder.name)
+            .put("hardware", decoder.isHardwareAccelerated)
+            .put("maxWidth", decoder.maxWidth)
+            .put("maxHeight", decoder.maxHeight)
+            .put("maxFrameRate", decoder.maxFrameRate)
+            .put("maxPixelRate", decoder.maxPixelRate)
+            .put("profileLevels", profileLevels)
+    }
+
+    private fun fromJson(mimeType: String, json: JSONObject): Decoder {
+        val profileLevels = HashMap<Int, Int>()
+        val profileLevelsJson = json.getJSONObject("profileLevels")
+        for (profile in profileLevelsJson.keys()) {
+            profileLevels[profile.toInt()] = profileLevelsJson.getInt(profile)
+        }
+        return Decoder(
+            json.getString("name"),
+            mimeType,
+            json.getBoolean("hardware"),
+            json.getInt("maxWidth"),
+            json.getInt("maxHeight"),
+            json.getDouble("maxFrameRate"),
+            json.getDouble("maxPixelRate"),
+            profileLevels
+        )
+    }
+}
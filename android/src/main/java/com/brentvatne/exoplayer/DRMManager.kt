@@ -1,5 +1,7 @@
 package com.brentvatne.exoplayer
 
+import android.content.Context
+import androidx.media3.common.C
 import androidx.media3.common.util.Util
 import androidx.media3.datasource.HttpDataSource
 import androidx.media3.exoplayer.drm.DefaultDrmSessionManager
@@ -8,10 +10,20 @@ import androidx.media3.exoplayer.drm.FrameworkMediaDrm
 import androidx.media3.exoplayer.drm.HttpMediaDrmCallback
 import androidx.media3.exoplayer.drm.UnsupportedDrmException
 import com.brentvatne.common.api.DRMProps
+import com.brentvatne.common.toolbox.DebugLog
 import java.util.UUID
 
-class DRMManager(private val dataSourceFactory: HttpDataSource.Factory) : DRMManagerSpec {
-    private var hasDrmFailed = false
+class DRMManager @JvmOverloads constructor(
+    private val dataSourceFactory: HttpDataSource.Factory,
+    private val context: Context? = null,
+    private var hasDrmFailed: Boolean = false
+) : DRMManagerSpec {
+
+    /**
+     * Thrown when the OS Media DRM Framework still fails after the retries, reported to JS as error 3006.
+     * Unsupported schemes are still reported with UnsupportedDrmException (error 3003).
+     */
+    class DrmFrameworkException(cause: Exception) : RuntimeException(cause)
 
     @Throws(UnsupportedDrmException::class)
     override fun buildDrmSessionManager(uuid: UUID, drmProps: DRMProps): DrmSessionManager? = buildDrmSessionManager(uuid, drmProps, 0)
@@ -23,12 +35,23 @@ class DRMManager(private val dataSourceFactory: HttpDataSource.Factory) : DRMMan
         }
 
         try {
-            val drmCallback = HttpMediaDrmCallback(drmProps.drmLicenseServer, dataSourceFactory)
+            val drmCallback = buildDrmCallback(drmProps, dataSourceFactory)
 
-            // Set DRM headers
-            val keyRequestPropertiesArray = drmProps.drmLicenseHeader
-            for (i in keyRequestPropertiesArray.indices step 2) {
-                drmCallback.setKeyRequestProperty(keyRequestPropertiesArray[i], keyRequestPropertiesArray[i + 1])
+            // Restore keys of a previously stored license, no license request will be done
+            val offlineKeySetId = context?.let { OfflineLicenseCache.getKeySetId(it, uuid, drmProps, dataSourceFactory) }
+
+            if (context != null && offlineKeySetId == null) {
+                // Share MediaDrm and open sessions with previous sources
+                DrmSessionPool.prewarm(uuid, hasDrmFailed)
+                val key = DrmSessionPool.keyOf(uuid, drmProps, hasDrmFailed)
+                return DrmSessionPool.buildSessionManager(context, key) { mediaDrmProvider ->
+                    DefaultDrmSessionManager.Builder()
+                        .setUuidAndExoMediaDrmProvider(uuid, mediaDrmProvider)
+                        .setKeyRequestParameters(null)
+                        .setMultiSession(drmProps.multiDrm)
+                        .setSessionKeepaliveMs(DrmSessionPool.ttlMs)
+                        .build(drmCallback)
+                }
             }
 
             val mediaDrm = FrameworkMediaDrm.newInstance(uuid)
@@ -39,12 +62,22 @@ class DRMManager(private val dataSourceFactory: HttpDataSource.Factory) : DRMMan
                 mediaDrm.setPropertyString("securityLevel", "L3")
             }
 
-            return DefaultDrmSessionManager.Builder()
+            val drmSessionManager = DefaultDrmSessionManager.Builder()
                 .setUuidAndExoMediaDrmProvider(uuid) { mediaDrm }
                 .setKeyRequestParameters(null)
                 .setMultiSession(drmProps.multiDrm)
                 .build(drmCallback)
+
+            if (offlineKeySetId != null) {
+                DebugLog.d(TAG, "using offline license for ${drmProps.contentId}")
+                drmSessionManager.setMode(DefaultDrmSessionManager.MODE_PLAYBACK, offlineKeySetId)
+            }
+            return drmSessionManager
         } catch (ex: UnsupportedDrmException) {
+            if (ex.reason == UnsupportedDrmException.REASON_INSTANTIATION_ERROR && uuid == C.WIDEVINE_UUID) {
+                // MediaDrm could not be created with the security level which was used
+                context?.let { DrmCapabilityProfile.recordFailure(it, hasDrmFailed) }
+            }
             hasDrmFailed = true
             throw ex
         } catch (ex: Exception) {
@@ -53,7 +86,26 @@ class DRMManager(private val dataSourceFactory: HttpDataSource.Factory) : DRMMan
                 hasDrmFailed = true
                 return buildDrmSessionManager(uuid, drmProps, retryCount + 1)
             }
-            throw UnsupportedDrmException(UnsupportedDrmException.REASON_UNSUPPORTED_SCHEME, ex)
+            throw DrmFrameworkException(ex)
+        }
+    }
+
+    companion object {
+        private const val TAG = "DRMManager"
+
+        /**
+         * Build the license request callback with the license server and headers of drmProps
+         */
+        @JvmStatic
+        fun buildDrmCallback(drmProps: DRMProps, dataSourceFactory: HttpDataSource.Factory): HttpMediaDrmCallback {
+            val drmCallback = HttpMediaDrmCallback(drmProps.drmLicenseServer, dataSourceFactory)
+
+            // Set DRM headers
+            val keyRequestPropertiesArray = drmProps.drmLicenseHeader
+            for (i in 0 until keyRequestPropertiesArray.size - 1 step 2) {
+                drmCallback.setKeyRequestProperty(keyRequestPropertiesArray[i], keyRequestPropertiesArray[i + 1])
+            }
+            return drmCallback
         }
     }
 }
@@ -1,10 +1,8 @@
 package com.brentvatne.exoplayer
 
-import android.net.Uri
+import android.content.Context
 import androidx.media3.common.util.Util
-import androidx.media3.datasource.AssetDataSource
 import androidx.media3.datasource.DataSource
-import androidx.media3.datasource.DataSpec
 import androidx.media3.datasource.DefaultDataSource
 import androidx.media3.datasource.HttpDataSource
 import androidx.media3.datasource.okhttp.OkHttpDataSource
@@ -13,76 +11,101 @@ import com.facebook.react.bridge.ReactContext
 import com.facebook.react.modules.network.CookieJarContainer
 import com.facebook.react.modules.network.ForwardingCookieHandler
 import com.facebook.react.modules.network.OkHttpClientProvider
+import com.facebook.react.uimanager.ThemedReactContext
 import okhttp3.Call
 import okhttp3.JavaNetCookieJar
+import okhttp3.OkHttpClient
 
+/**
+ * Factories of network data sources.
+ *
+ * Factories are cached by request headers, bandwidth meter and user agent, so that sources sharing them
+ * (like sources sent with the same auth headers) reuse the same factory instead of building a new one at each setSrc.
+ * Returned factories are shared between views and must not be modified.
+ */
 object DataSourceUtil {
-    private var defaultDataSourceFactory: DataSource.Factory? = null
-    private var defaultHttpDataSourceFactory: HttpDataSource.Factory? = null
+    private const val MAX_CACHED_FACTORIES = 16
+
+    private data class FactoryKey(val requestHeaders: Map<String, String>, val bandwidthMeter: DefaultBandwidthMeter?, val userAgent: String)
+
+    private class FactoryCache<T> : LinkedHashMap<FactoryKey, T>(MAX_CACHED_FACTORIES, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<FactoryKey, T>?): Boolean = size > MAX_CACHED_FACTORIES
+    }
+
+    // guarded by this
+    private val dataSourceFactories = FactoryCache<DataSource.Factory>()
+    private val httpDataSourceFactories = FactoryCache<HttpDataSource.Factory>()
+    private var cookieJarClient: OkHttpClient? = null
+    private var factoriesClient: OkHttpClient? = null
+
+    @Volatile
     private var userAgent: String? = null
 
-    private fun getUserAgent(context: ReactContext): String {
-        if (userAgent == null) {
-            userAgent = Util.getUserAgent(context, context.packageName)
-        }
-        return userAgent as String
+    private fun getUserAgent(context: ReactContext): String =
+        userAgent ?: Util.getUserAgent(context, context.packageName).also { userAgent = it }
+
+    private fun keyOf(context: ReactContext, bandwidthMeter: DefaultBandwidthMeter?, requestHeaders: Map<String, String>?): FactoryKey {
+        val headers = if (requestHeaders.isNullOrEmpty()) emptyMap() else HashMap(requestHeaders)
+        return FactoryKey(headers, bandwidthMeter, headers["User-Agent"] ?: getUserAgent(context))
     }
 
     @JvmStatic
+    @Synchronized
     fun getDefaultDataSourceFactory(context: ReactContext, bandwidthMeter: DefaultBandwidthMeter?, requestHeaders: Map<String, String>?): DataSource.Factory {
-        if (defaultDataSourceFactory == null || !requestHeaders.isNullOrEmpty()) {
-            defaultDataSourceFactory = buildDataSourceFactory(context, bandwidthMeter, requestHeaders)
-        }
-        return defaultDataSourceFactory as DataSource.Factory
+        val client = getOkHttpClient(context)
+        val key = keyOf(context, bandwidthMeter, requestHeaders)
+        // factories outlive views, they must not hold the themed context
+        return dataSourceFactories.getOrPut(key) { DefaultDataSource.Factory(context.applicationContext, getHttpDataSourceFactory(client, key)) }
     }
 
     @JvmStatic
+    @Synchronized
     fun getDefaultHttpDataSourceFactory(
         context: ReactContext,
         bandwidthMeter: DefaultBandwidthMeter?,
         requestHeaders: Map<String, String>?
-    ): HttpDataSource.Factory {
-        if (defaultHttpDataSourceFactory == null || !requestHeaders.isNullOrEmpty()) {
-            defaultHttpDataSourceFactory = buildHttpDataSourceFactory(context, bandwidthMeter, requestHeaders)
+    ): HttpDataSource.Factory = getHttpDataSourceFactory(getOkHttpClient(context), keyOf(context, bandwidthMeter, requestHeaders))
+
+    private fun getHttpDataSourceFactory(client: OkHttpClient, key: FactoryKey): HttpDataSource.Factory =
+        httpDataSourceFactories.getOrPut(key) { buildHttpDataSourceFactory(client, key) }
+
+    /**
+     * @return the media OkHttp client, see RNVMediaHttpClient.
+     * The cookie jar of the RN client, shared by the media client, is set once per RN client.
+     * Cached factories are dropped when the media client changes.
+     */
+    private fun getOkHttpClient(context: ReactContext): OkHttpClient {
+        val rnClient = OkHttpClientProvider.getOkHttpClient()
+        if (rnClient !== cookieJarClient) {
+            // the cookie jar outlives views, it must not hold the themed context (and its activity)
+            val appReactContext = (context as? ThemedReactContext)?.reactApplicationContext ?: context
+            (rnClient.cookieJar as? CookieJarContainer)?.setCookieJar(JavaNetCookieJar(ForwardingCookieHandler(appReactContext)))
+            cookieJarClient = rnClient
+        }
+        val client = RNVMediaHttpClient.get()
+        if (client !== factoriesClient) {
+            dataSourceFactories.clear()
+            httpDataSourceFactories.clear()
+            factoriesClient = client
         }
-        return defaultHttpDataSourceFactory as HttpDataSource.Factory
+        return client
     }
 
-    private fun buildDataSourceFactory(
-        context: ReactContext,
-        bandwidthMeter: DefaultBandwidthMeter?,
-        requestHeaders: Map<String, String>?
-    ): DataSource.Factory = DefaultDataSource.Factory(context, buildHttpDataSourceFactory(context, bandwidthMeter, requestHeaders))
-
-    private fun buildHttpDataSourceFactory(
-        context: ReactContext,
-        bandwidthMeter: DefaultBandwidthMeter?,
-        requestHeaders: Map<String, String>?
-    ): HttpDataSource.Factory {
-        val client = OkHttpClientProvider.getOkHttpClient()
-        val container = client.cookieJar as CookieJarContainer
-        val handler = ForwardingCookieHandler(context)
-        container.setCookieJar(JavaNetCookieJar(handler))
+    private fun buildHttpDataSourceFactory(client: OkHttpClient, key: FactoryKey): HttpDataSource.Factory {
         val okHttpDataSourceFactory = OkHttpDataSource.Factory(client as Call.Factory)
-            .setTransferListener(bandwidthMeter)
-
-        if (requestHeaders != null) {
-            okHttpDataSourceFactory.setDefaultRequestProperties(requestHeaders)
-            if (!requestHeaders.containsKey("User-Agent")) {
-                okHttpDataSourceFactory.setUserAgent(getUserAgent(context))
-            }
-        } else {
-            okHttpDataSourceFactory.setUserAgent(getUserAgent(context))
+            .setTransferListener(key.bandwidthMeter)
+        if (key.requestHeaders.isNotEmpty()) {
+            okHttpDataSourceFactory.setDefaultRequestProperties(key.requestHeaders)
+        }
+        if (!key.requestHeaders.containsKey("User-Agent")) {
+            okHttpDataSourceFactory.setUserAgent(key.userAgent)
         }
-
         return okHttpDataSourceFactory
     }
 
+    /**
+     * @return factory of assets and raw resources, each data source opens its own file descriptor on the loader thread
+     */
     @JvmStatic
-    fun buildAssetDataSourceFactory(context: ReactContext?, srcUri: Uri?): DataSource.Factory {
-        val dataSpec = DataSpec(srcUri!!)
-        val rawResourceDataSource = AssetDataSource(context!!)
-        rawResourceDataSource.open(dataSpec)
-        return DataSource.Factory { rawResourceDataSource }
-    }
+    fun buildAssetDataSourceFactory(context: Context): DataSource.Factory = MappedAssetDataSource.Factory(context)
 }
@@ -7,22 +7,20 @@ import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy
 
 class DefaultReactExoplayerConfig(private val context: Context, override var initialBitrate: Long? = null) : ReactExoplayerConfig {
 
-    private var bandWidthMeter: DefaultBandwidthMeter = createBandwidthMeter(initialBitrate)
+    init {
+        initialBitrate?.let { BandwidthEstimateStore.setDefaultInitialBitrate(context, it) }
+    }
 
     override var disableDisconnectError: Boolean = false
 
+    // Shared with the central player, initialized with the estimates learned on the current network
     override val bandwidthMeter: DefaultBandwidthMeter
-        get() = bandWidthMeter
-
-    private fun createBandwidthMeter(bitrate: Long?): DefaultBandwidthMeter =
-        DefaultBandwidthMeter.Builder(context)
-            .setInitialBitrateEstimate(bitrate ?: DefaultBandwidthMeter.DEFAULT_INITIAL_BITRATE_ESTIMATE)
-            .build()
+        get() = BandwidthEstimateStore.getBandwidthMeter(context)
 
     override fun setInitialBitrate(bitrate: Long) {
         if (initialBitrate == bitrate) return
         initialBitrate = bitrate
-        bandWidthMeter = createBandwidthMeter(bitrate)
+        BandwidthEstimateStore.setDefaultInitialBitrate(context, bitrate)
     }
 
     override fun buildLoadErrorHandlingPolicy(minLoadRetryCount: Int): LoadErrorHandlingPolicy =
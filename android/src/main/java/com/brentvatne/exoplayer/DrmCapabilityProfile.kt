@@ -0,0 +1,180 @@
+package com.brentvatne.exoplayer
+
+import android.content.Context
+import android.content.SharedPreferences
+import android.media.MediaDrm
+import android.media.NotProvisionedException
+import android.os.Build
+import androidx.media3.common.C
+import androidx.media3.common.PlaybackException
+import com.brentvatne.common.toolbox.DebugLog
+import java.util.concurrent.Executors
+
+/**
+ * Widevine capabilities of this device and OS build, persisted across app launches.
+ * It stores the reported security level, the provisioning state and the playback failure history,
+ * so that devices with a broken L1 implementation start directly on L3 instead of failing first.
+ * Only failures related to the security level are counted, and L1 is tried again FORCED_L3_DURATION_MS after the last one.
+ * Stored values are dropped when the OS build changes.
+ */
+object DrmCapabilityProfile {
+    private const val TAG = "DrmCapabilityProfile"
+    private const val PREFERENCES_NAME = "RNVDrmCapabilities"
+    private const val KEY_BUILD = "build"
+    private const val KEY_SECURITY_LEVEL = "securityLevel"
+    private const val KEY_PROVISIONED = "provisioned"
+    private const val KEY_L1_FAILURES = "l1Failures"
+    private const val KEY_L3_SUCCESSES = "l3Successes"
+    private const val KEY_LAST_FAILURE = "lastFailure"
+
+    // L1 failures after which L3 is used even if it never played successfully yet
+    private const val MAX_L1_FAILURES = 3
+
+    // L1 is probed again once this time elapsed since the last L1 failure
+    private const val FORCED_L3_DURATION_MS = 7 * 24 * 60 * 60 * 1000L
+
+    private const val SECURITY_LEVEL_PROPERTY = "securityLevel"
+
+    private val executor = Executors.newSingleThreadExecutor()
+
+    // guards the failure history, held only for SharedPreferences reads and in memory writes
+    private val lock = Any()
+
+    // serializes MediaDrm probes, callers of the other methods never wait for it
+    private val probeLock = Any()
+
+    // empty when Widevine is not available, null until known
+    @Volatile
+    private var securityLevel: String? = null
+
+    @Volatile
+    private var isBuildChecked = false
+
+    /** compute the profile in background if not done yet for this OS build */
+    @JvmStatic
+    fun ensureComputed(context: Context) {
+        if (preferences(context).contains(KEY_SECURITY_LEVEL)) return
+        executor.execute { getSecurityLevel(context) }
+    }
+
+    /**
+     * @return Widevine security level reported by MediaDrm ("L1", "L3"...) or null if Widevine is not available.
+     * Probes MediaDrm the first time for this OS build, must not be called from the main thread.
+     */
+    @JvmStatic
+    fun getSecurityLevel(context: Context): String? {
+        securityLevel?.let { return it.ifEmpty { null } }
+        synchronized(probeLock) {
+            securityLevel?.let { return it.ifEmpty { null } }
+            val preferences = preferences(context)
+            val stored = preferences.getString(KEY_SECURITY_LEVEL, null)
+            if (stored != null) {
+                securityLevel = stored
+                return stored.ifEmpty { null }
+            }
+            var probed: String? = null
+            var provisioned = false
+            var mediaDrm: MediaDrm? = null
+            try {
+                mediaDrm = MediaDrm(C.WIDEVINE_UUID)
+                probed = mediaDrm.getPropertyString(SECURITY_LEVEL_PROPERTY)
+                provisioned = try {
+                    mediaDrm.closeSession(mediaDrm.openSession())
+                    true
+                } catch (e: NotProvisionedException) {
+                    false
+                }
+            } catch (e: Exception) {
+                DebugLog.w(TAG, "Widevine not available: $e")
+            } finally {
+                mediaDrm?.let { releaseMediaDrm(it) }
+            }
+            DebugLog.d(TAG, "computed profile securityLevel=$probed provisioned=$provisioned")
+            preferences.edit()
+                // empty when Widevine is not available, a null value would remove the key
+                .putString(KEY_SECURITY_LEVEL, probed ?: "")
+                .putBoolean(KEY_PROVISIONED, provisioned)
+                .apply()
+            securityLevel = probed ?: ""
+            return probed
+        }
+    }
+
+    /** @return true when playback should start directly on L3 */
+    @JvmStatic
+    fun shouldForceL3(context: Context): Boolean = synchronized(lock) {
+        val preferences = preferences(context)
+        val l1Failures = preferences.getInt(KEY_L1_FAILURES, 0)
+        if (l1Failures == 0) return@synchronized false
+        if (System.currentTimeMillis() - preferences.getLong(KEY_LAST_FAILURE, 0) >= FORCED_L3_DURATION_MS) {
+            // a new L1 failure forces L3 again, a success on L1 clears the history
+            return@synchronized false
+        }
+        l1Failures >= MAX_L1_FAILURES || preferences.getInt(KEY_L3_SUCCESSES, 0) > 0
+    }
+
+    /**
+     * @return true for playback errors which may be caused by the security level, license server
+     * and network errors are not
+     */
+    @JvmStatic
+    fun isSecurityLevelError(errorCode: Int): Boolean =
+        errorCode == PlaybackException.ERROR_CODE_DRM_PROVISIONING_FAILED ||
+            errorCode == PlaybackException.ERROR_CODE_DRM_SYSTEM_ERROR ||
+            errorCode == PlaybackException.ERROR_CODE_DRM_DEVICE_REVOKED
+
+    /**
+     * Record a DRM failure related to the security level (see isSecurityLevelError, or MediaDrm creation),
+     * forcedL3 is the security level which was used
+     */
+    @JvmStatic
+    fun recordFailure(context: Context, forcedL3: Boolean) {
+        if (forcedL3) return
+        synchronized(lock) {
+            val preferences = preferences(context)
+            preferences.edit()
+                .putInt(KEY_L1_FAILURES, preferences.getInt(KEY_L1_FAILURES, 0) + 1)
+                .putLong(KEY_LAST_FAILURE, System.currentTimeMillis())
+                .apply()
+        }
+    }
+
+    /** Record a DRM playback which reached ready state, once per source */
+    @JvmStatic
+    fun recordSuccess(context: Context, forcedL3: Boolean) {
+        synchronized(lock) {
+            val preferences = preferences(context)
+            if (forcedL3) {
+                if (preferences.getInt(KEY_L1_FAILURES, 0) > 0) {
+                    preferences.edit().putInt(KEY_L3_SUCCESSES, preferences.getInt(KEY_L3_SUCCESSES, 0) + 1).apply()
+                }
+            } else if (preferences.getInt(KEY_L1_FAILURES, 0) > 0) {
+                // L1 works, previous failures were not related to the security level
+                preferences.edit().remove(KEY_L1_FAILURES).remove(KEY_L3_SUCCESSES).apply()
+            }
+        }
+    }
+
+    @Suppress("DEPRECATION")
+    private fun releaseMediaDrm(mediaDrm: MediaDrm) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            mediaDrm.close()
+        } else {
+            mediaDrm.release()
+        }
+    }
+
+    private fun preferences(context: Context): SharedPreferences {
+        val preferences = context.applicationContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE)
+        if (isBuildChecked) return preferences
+        synchronized(lock) {
+            if (!isBuildChecked && preferences.getString(KEY_BUILD, null) != Build.FINGERPRINT) {
+                // new device or OS update, previous capabilities do not apply anymore
+                // apply updates the in memory values right away, the write happens in background
+                preferences.edit().clear().putString(KEY_BUILD, Build.FINGERPRINT).apply()
+            }
+            isBuildChecked = true
+        }
+        return preferences
+    }
+}
@@ -0,0 +1,137 @@
+package com.brentvatne.exoplayer
+
+import android.os.SystemClock
+import androidx.media3.common.C
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.common.util.Util
+import androidx.media3.exoplayer.dash.DashUtil
+import com.brentvatne.common.api.DRMProps
+import com.brentvatne.common.api.Source
+import com.brentvatne.common.toolbox.DebugLog
+import com.brentvatne.react.BuildConfig
+import com.facebook.react.bridge.ReactContext
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Requests DRM licenses of upcoming sources before they are played.
+ *
+ * The DASH manifest of the source is loaded to get its DrmInitData, then keys are acquired either:
+ * - as an offline license when the source persists its license (see OfflineLicenseCache)
+ * - in a warm session of the pooled session manager (see DrmSessionPool.preacquire), which requires multiDrm
+ * The next playback of the source then starts without waiting for the license server.
+ */
+@UnstableApi
+object DrmLicensePrefetcher {
+    private const val TAG = "DrmLicensePrefetcher"
+
+    /** Number of queued sources to prefetch, starting from the next one */
+    const val PRELOAD_WINDOW = 2
+    private const val MAX_CONCURRENT_PREFETCHES = 2
+    private const val MAX_PENDING_PREFETCHES = 8
+
+    // state of prefetched licenses: PENDING, or the time they became ready
+    private const val PENDING = 0L
+    private val states = ConcurrentHashMap<String, Long>()
+    private val executor = ThreadPoolExecutor(
+        MAX_CONCURRENT_PREFETCHES,
+        MAX_CONCURRENT_PREFETCHES,
+        30,
+        TimeUnit.SECONDS,
+        LinkedBlockingQueue()
+    ).apply { allowCoreThreadTimeOut(true) }
+
+    private val requested = AtomicInteger()
+    private val completed = AtomicInteger()
+    private val failed = AtomicInteger()
+    private val hits = AtomicInteger()
+    private val late = AtomicInteger()
+    private val misses = AtomicInteger()
+
+    /** Prefetch the license of the first sources of queue */
+    @JvmStatic
+    fun prefetchWindow(context: ReactContext, queue: List<Source>) {
+        queue.take(PRELOAD_WINDOW).forEach { prefetch(context, it) }
+    }
+
+    /**
+     * Prefetch the license of source in background, does nothing if it is not protected or already prefetched.
+     */
+    @JvmStatic
+    fun prefetch(context: ReactContext, source: Source) {
+        val drmProps = source.drmProps ?: return
+        val uri = source.uri ?: return
+        val uuid = drmProps.drmType?.let { Util.getDrmUuid(it) } ?: return
+        val contentType = if (source.extension.isNullOrEmpty()) Util.inferContentType(uri) else Util.inferContentTypeForExtension(source.extension!!)
+        if (!BuildConfig.USE_EXOPLAYER_DASH || contentType != C.CONTENT_TYPE_DASH) {
+            // DrmInitData of other formats is only known once media segments are loaded
+            DebugLog.d(TAG, "license prefetch is only supported for DASH: $uri")
+            return
+        }
+        val key = prefetchKey(drmProps)
+        val now = SystemClock.elapsedRealtime()
+        states.entries.removeIf { it.value != PENDING && now - it.value > DrmSessionPool.ttlMs }
+        if (states.size >= MAX_PENDING_PREFETCHES && !states.containsKey(key)) {
+            DebugLog.d(TAG, "too many pending prefetches, ignoring $uri")
+            return
+        }
+        if (states.putIfAbsent(key, PENDING) != null) return
+        requested.incrementAndGet()
+
+        executor.execute {
+            try {
+                val forceL3 = DrmCapabilityProfile.shouldForceL3(context)
+                val httpDataSourceFactory = DataSourceUtil.getDefaultHttpDataSourceFactory(context, null, source.headers)
+                val dataSource = httpDataSourceFactory.createDataSource()
+                val manifest = DashUtil.loadManifest(dataSource, uri)
+                val format = DashUtil.loadFormatWithDrmInitData(dataSource, manifest.getPeriod(0))
+                val isPrefetched = format != null && (
+                    OfflineLicenseCache.acquire(context, uuid, drmProps, format, httpDataSourceFactory) ||
+                        DrmSessionPool.preacquire(DrmSessionPool.keyOf(uuid, drmProps, forceL3), format)
+                    )
+                if (isPrefetched) {
+                    states.replace(key, PENDING, SystemClock.elapsedRealtime())
+                    completed.incrementAndGet()
+                    DebugLog.d(TAG, "prefetched license for ${drmProps.contentId}")
+                } else {
+                    states.remove(key)
+                    failed.incrementAndGet()
+                    DebugLog.d(TAG, "license of ${drmProps.contentId} cannot be prefetched")
+                }
+            } catch (e: Exception) {
+                states.remove(key)
+                failed.incrementAndGet()
+                DebugLog.w(TAG, "license prefetch failed for ${drmProps.contentId}: $e")
+            }
+        }
+    }
+
+    /** To be called when a protected source starts, to account prefetch hits */
+    @JvmStatic
+    fun onSourceStarted(drmProps: DRMProps) {
+        val readyAt = states.remove(prefetchKey(drmProps))
+        when {
+            readyAt == null -> misses.incrementAndGet()
+            readyAt == PENDING -> late.incrementAndGet()
+            // warm sessions are closed after the pool keepalive
+            SystemClock.elapsedRealtime() - readyAt > DrmSessionPool.ttlMs -> misses.incrementAndGet()
+            else -> hits.incrementAndGet()
+        }
+    }
+
+    /** @return prefetch counters, hits are sources started after their license was prefetched */
+    @JvmStatic
+    fun getStats(): Map<String, Int> = mapOf(
+        "requested" to requested.get(),
+        "completed" to completed.get(),
+        "failed" to failed.get(),
+        "hits" to hits.get(),
+        "late" to late.get(),
+        "misses" to misses.get()
+    )
+
+    private fun prefetchKey(drmProps: DRMProps): String = drmProps.drmLicenseServer + "|" + drmProps.contentId
+}
@@ -0,0 +1,317 @@
+package com.brentvatne.exoplayer
+
+import android.content.ComponentCallbacks2
+import android.content.Context
+import android.content.res.Configuration
+import android.os.Handler
+import android.os.Looper
+import androidx.media3.common.C
+import androidx.media3.common.Format
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.exoplayer.analytics.PlayerId
+import androidx.media3.exoplayer.drm.DefaultDrmSessionManager
+import androidx.media3.exoplayer.drm.DrmSession
+import androidx.media3.exoplayer.drm.DrmSessionEventListener
+import androidx.media3.exoplayer.drm.DrmSessionManager
+import androidx.media3.exoplayer.drm.ExoMediaDrm
+import androidx.media3.exoplayer.drm.FrameworkMediaDrm
+import com.brentvatne.common.api.DRMProps
+import com.brentvatne.common.toolbox.DebugLog
+import java.util.UUID
+
+/**
+ * Process wide pool of DRM session managers and MediaDrm instances.
+ *
+ * Session managers with multiSession are shared by key (uuid, license server, headers, security level)
+ * and playback thread: Media3 binds a DefaultDrmSessionManager to a single playback looper, so the
+ * central player reuses the same manager (and its open sessions) across sources, while views with their
+ * own player reuse idle MediaDrm instances.
+ * Without multiSession a manager hands its single session to any source, whatever its DrmInitData, so each
+ * source gets its own manager and only the MediaDrm is reused.
+ * Unused managers and MediaDrm instances are kept for ttlMs, and released right away under memory pressure.
+ */
+@UnstableApi
+object DrmSessionPool {
+    private const val TAG = "DrmSessionPool"
+
+    /** Same default as media3 session keepalive */
+    const val DEFAULT_TTL_MS = 5 * 60 * 1000L
+
+    data class Key(
+        val uuid: UUID,
+        val licenseServer: String?,
+        val headers: List<String>,
+        val multiSession: Boolean,
+        val forceL3: Boolean
+    )
+
+    @JvmStatic
+    fun keyOf(uuid: UUID, drmProps: DRMProps, forceL3: Boolean): Key =
+        Key(uuid, drmProps.drmLicenseServer, drmProps.drmLicenseHeader.toList(), drmProps.multiDrm, forceL3)
+
+    private class ManagerEntry(val key: Key, val looper: Looper) {
+        lateinit var manager: DefaultDrmSessionManager
+        var mediaDrm: FrameworkMediaDrm? = null
+        var references = 0
+        var isHeld = false
+        var expiry: Runnable? = null
+    }
+
+    private class IdleMediaDrm(val uuid: UUID, val forceL3: Boolean, val mediaDrm: FrameworkMediaDrm) {
+        var expiry: Runnable? = null
+    }
+
+    private val lock = Any()
+    private val managers = ArrayList<ManagerEntry>()
+    private val idleMediaDrms = ArrayList<IdleMediaDrm>()
+    private val handler = Handler(Looper.getMainLooper())
+    private var memoryCallbacksRegistered = false
+
+    @JvmStatic
+    @Volatile
+    var ttlMs = DEFAULT_TTL_MS
+
+    /**
+     * Build a session manager backed by the pool, the actual manager is resolved when the player is known.
+     * @param factory creates a new manager using the given MediaDrm provider
+     */
+    @JvmStatic
+    fun buildSessionManager(context: Context, key: Key, factory: (ExoMediaDrm.Provider) -> DefaultDrmSessionManager): DrmSessionManager {
+        registerMemoryCallbacks(context)
+        return PooledDrmSessionManager(key, factory)
+    }
+
+    /**
+     * Make sure an idle MediaDrm is available for uuid, creating it on the calling thread if needed.
+     * Called from the startup stages so that MediaDrm creation does not happen on the playback thread.
+     */
+    @JvmStatic
+    fun prewarm(uuid: UUID, forceL3: Boolean) {
+        synchronized(lock) {
+            if (idleMediaDrms.any { it.uuid == uuid && it.forceL3 == forceL3 }) return
+        }
+        val mediaDrm = newMediaDrm(uuid, forceL3)
+        synchronized(lock) {
+            addIdleMediaDrm(IdleMediaDrm(uuid, forceL3, mediaDrm))
+        }
+    }
+
+    /**
+     * Open a session for format in a pooled manager of key, so its license is requested before a source needs it.
+     * The session stays open for the manager keepalive duration and is reused by the next acquireSession with the same DrmInitData.
+     * Must not be called from the playback thread: the release of the reference has to be posted after its acquisition.
+     * @return false if no pooled manager can be used for key
+     */
+    @JvmStatic
+    fun preacquire(key: Key, format: Format): Boolean {
+        // without multiSession a manager has a single session, which belongs to the current source
+        if (!key.multiSession) return false
+        val entry = synchronized(lock) {
+            managers.firstOrNull { it.key == key && it.isHeld && it.looper.thread.isAlive }
+        } ?: return false
+        entry.manager.preacquireSession(null, format).release()
+        return true
+    }
+
+    /** Release everything which is not currently used by a player */
+    @JvmStatic
+    fun releaseIdle() {
+        val evicted = ArrayList<ManagerEntry>()
+        synchronized(lock) {
+            managers.filterTo(evicted) { it.references == 0 }
+            managers.removeAll(evicted)
+        }
+        evicted.forEach { releaseManager(it, returnMediaDrm = false) }
+        val idle: List<IdleMediaDrm>
+        synchronized(lock) {
+            idle = ArrayList(idleMediaDrms)
+            idleMediaDrms.clear()
+        }
+        idle.forEach {
+            it.expiry?.let { expiry -> handler.removeCallbacks(expiry) }
+            it.mediaDrm.release()
+        }
+        DebugLog.d(TAG, "released ${evicted.size} managers and ${idle.size} idle MediaDrm")
+    }
+
+    private fun acquireEntry(key: Key, looper: Looper, factory: (ExoMediaDrm.Provider) -> DefaultDrmSessionManager): ManagerEntry {
+        val deadEntries = ArrayList<ManagerEntry>()
+        var entry: ManagerEntry?
+        synchronized(lock) {
+            // players which were released cannot reuse their managers, give back their MediaDrm
+            managers.filterTo(deadEntries) { it.references == 0 && !it.looper.thread.isAlive }
+            managers.removeAll(deadEntries)
+            // a single session manager would give the session of the previous source to the next one
+            entry = if (key.multiSession) managers.firstOrNull { it.key == key && it.looper == looper } else null
+            entry?.let {
+                it.references++
+                it.expiry?.let { expiry -> handler.removeCallbacks(expiry) }
+                it.expiry = null
+            }
+        }
+        deadEntries.forEach { releaseManager(it, returnMediaDrm = true) }
+        entry?.let {
+            DebugLog.d(TAG, "reusing session manager for ${key.licenseServer}")
+            return it
+        }
+
+        val newEntry = ManagerEntry(key, looper)
+        newEntry.references = 1
+        newEntry.manager = factory(ExoMediaDrm.Provider { uuid -> leaseMediaDrm(uuid, key.forceL3).also { newEntry.mediaDrm = it } })
+        if (key.multiSession) {
+            synchronized(lock) {
+                managers.add(newEntry)
+            }
+        }
+        return newEntry
+    }
+
+    private fun releaseEntry(entry: ManagerEntry) {
+        if (!entry.key.multiSession) {
+            // not pooled, its MediaDrm goes back to the idle instances
+            releaseManager(entry, returnMediaDrm = true)
+            return
+        }
+        synchronized(lock) {
+            if (--entry.references > 0) return
+            val expiry = Runnable {
+                synchronized(lock) {
+                    if (entry.references > 0 || !managers.remove(entry)) return@Runnable
+                }
+                releaseManager(entry, returnMediaDrm = true)
+            }
+            entry.expiry = expiry
+            handler.postDelayed(expiry, ttlMs)
+        }
+    }
+
+    /** Drop the pool hold on the manager, which closes its kept alive sessions */
+    private fun releaseManager(entry: ManagerEntry, returnMediaDrm: Boolean) {
+        val releaseTask = Runnable {
+            entry.manager.release()
+            val mediaDrm = entry.mediaDrm ?: return@Runnable
+            entry.mediaDrm = null
+            if (returnMediaDrm) {
+                synchronized(lock) {
+                    addIdleMediaDrm(IdleMediaDrm(entry.key.uuid, entry.key.forceL3, mediaDrm))
+                }
+            } else {
+                mediaDrm.release()
+            }
+        }
+        if (!entry.looper.thread.isAlive || !Handler(entry.looper).post(releaseTask)) {
+            releaseTask.run()
+        }
+    }
+
+    private fun leaseMediaDrm(uuid: UUID, forceL3: Boolean): FrameworkMediaDrm {
+        val idle = synchronized(lock) {
+            idleMediaDrms.firstOrNull { it.uuid == uuid && it.forceL3 == forceL3 }?.also { idleMediaDrms.remove(it) }
+        }
+        val mediaDrm = if (idle != null) {
+            idle.expiry?.let { handler.removeCallbacks(it) }
+            idle.mediaDrm
+        } else {
+            newMediaDrm(uuid, forceL3)
+        }
+        // the pool keeps its own reference, the manager releases the other one
+        mediaDrm.acquire()
+        return mediaDrm
+    }
+
+    private fun newMediaDrm(uuid: UUID, forceL3: Boolean): FrameworkMediaDrm {
+        val mediaDrm = FrameworkMediaDrm.newInstance(uuid)
+        if (forceL3) {
+            // When DRM fails using L1 we want to switch to L3
+            mediaDrm.setPropertyString("securityLevel", "L3")
+        }
+        return mediaDrm
+    }
+
+    // must be called with lock held
+    private fun addIdleMediaDrm(idle: IdleMediaDrm) {
+        val expiry = Runnable {
+            val removed = synchronized(lock) { idleMediaDrms.remove(idle) }
+            if (removed) idle.mediaDrm.release()
+        }
+        idle.expiry = expiry
+        idleMediaDrms.add(idle)
+        handler.postDelayed(expiry, ttlMs)
+    }
+
+    private fun registerMemoryCallbacks(context: Context) {
+        synchronized(lock) {
+            if (memoryCallbacksRegistered) return
+            memoryCallbacksRegistered = true
+        }
+        context.applicationContext.registerComponentCallbacks(object : ComponentCallbacks2 {
+            override fun onTrimMemory(level: Int) {
+                if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+                    releaseIdle()
+                }
+            }
+
+            override fun onConfigurationChanged(newConfig: Configuration) {}
+
+            @Deprecated("Deprecated in Java")
+            override fun onLowMemory() {
+                releaseIdle()
+            }
+        })
+    }
+
+    /**
+     * DrmSessionManager given to media sources, delegates to the pooled manager of the playback thread.
+     */
+    private class PooledDrmSessionManager(
+        private val key: Key,
+        private val factory: (ExoMediaDrm.Provider) -> DefaultDrmSessionManager
+    ) : DrmSessionManager {
+        private var entry: ManagerEntry? = null
+        private var prepareCount = 0
+
+        override fun setPlayer(playbackLooper: Looper, playerId: PlayerId) {
+            var current = entry
+            if (current == null || current.looper != playbackLooper) {
+                current?.let { releaseEntry(it) }
+                current = acquireEntry(key, playbackLooper, factory)
+                entry = current
+                current.manager.setPlayer(playbackLooper, playerId)
+                if (!current.isHeld) {
+                    // pool hold, keeps MediaDrm and sessions open when no source uses the manager
+                    current.isHeld = true
+                    current.manager.prepare()
+                }
+            } else {
+                current.manager.setPlayer(playbackLooper, playerId)
+            }
+        }
+
+        override fun prepare() {
+            prepareCount++
+            entry?.manager?.prepare()
+        }
+
+        override fun release() {
+            val current = entry ?: return
+            current.manager.release()
+            if (--prepareCount == 0) {
+                entry = null
+                releaseEntry(current)
+            }
+        }
+
+        override fun acquireSession(eventDispatcher: DrmSessionEventListener.EventDispatcher?, format: Format): DrmSession? =
+            checkNotNull(entry) { "setPlayer must be called first" }.manager.acquireSession(eventDispatcher, format)
+
+        override fun preacquireSession(
+            eventDispatcher: DrmSessionEventListener.EventDispatcher?,
+            format: Format
+        ): DrmSessionManager.DrmSessionReference =
+            entry?.manager?.preacquireSession(eventDispatcher, format) ?: DrmSessionManager.DrmSessionReference.EMPTY
+
+        override fun getCryptoType(format: Format): Int =
+            entry?.manager?.getCryptoType(format)
+                ?: if (format.drmInitData == null) C.CRYPTO_TYPE_NONE else C.CRYPTO_TYPE_UNSUPPORTED
+    }
+}
@@ -44,6 +44,7 @@ class ExoPlayerView : FrameLayout, AdViewProvider {
     @ViewType.ViewType
     private var viewType = ViewType.VIEW_TYPE_SURFACE
     private var hideShutterView = false
+    private var videoOutputEnabled = true
 
     private var localStyle = SubtitleStyle()
 
@@ -123,6 +124,10 @@ class ExoPlayerView : FrameLayout, AdViewProvider {
     }
 
     private fun setVideoView() {
+        if (!videoOutputEnabled) {
+            Log.d("ExoPlayerView", "Video output disabled, not attaching: $surfaceView")
+            return
+        }
         Log.d("ExoPlayerView", "Setting video view: $surfaceView")
         try {
             when (val view = surfaceView) {
@@ -314,6 +319,28 @@ class ExoPlayerView : FrameLayout, AdViewProvider {
         }
     }
 
+    /**
+     * Attach or detach the video surface from the player without releasing it.
+     * While detached, no video frames are decoded or rendered and the shutter stays visible.
+     *
+     * @param enabled false to detach the surface, true to attach it again.
+     */
+    fun setVideoOutputEnabled(enabled: Boolean) {
+        if (videoOutputEnabled == enabled) {
+            return
+        }
+        videoOutputEnabled = enabled
+        if (player == null) {
+            return
+        }
+        if (enabled) {
+            setVideoView()
+        } else {
+            clearVideoView()
+            shutterView.visibility = View.VISIBLE
+        }
+    }
+
     fun setHideShutterView(hideShutterView: Boolean) {
         this.hideShutterView = hideShutterView
         updateShutterViewVisibility()
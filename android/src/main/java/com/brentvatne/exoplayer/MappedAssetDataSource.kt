@@ -0,0 +1,153 @@
+package com.brentvatne.exoplayer
+
+import android.content.ContentResolver
+import android.content.Context
+import android.content.res.AssetFileDescriptor
+import android.net.Uri
+import androidx.media3.common.C
+import androidx.media3.common.PlaybackException
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.datasource.AssetDataSource
+import androidx.media3.datasource.DataSource
+import androidx.media3.datasource.DataSourceException
+import androidx.media3.datasource.DataSpec
+import androidx.media3.datasource.DefaultDataSource
+import androidx.media3.datasource.TransferListener
+import java.io.FileInputStream
+import java.io.IOException
+
+/**
+ * DataSource of app assets (asset:// uris) and raw resources (android.resource:// uris).
+ *
+ * Each instance opens its own file descriptor at open, on the loader thread, so concurrent readers of the same asset
+ * do not share a stream. Uncompressed assets are read through memory mapping of their region of the apk.
+ * Compressed assets, which have no file descriptor, are read as streams.
+ */
+@UnstableApi
+class MappedAssetDataSource(private val context: Context) : DataSource {
+
+    class Factory(context: Context) : DataSource.Factory {
+        private val context = context.applicationContext
+
+        override fun createDataSource(): DataSource = MappedAssetDataSource(context)
+    }
+
+    private val transferListeners = ArrayList<TransferListener>()
+    private var fallback: DataSource? = null
+    private var dataSpec: DataSpec? = null
+    private var assetFileDescriptor: AssetFileDescriptor? = null
+    private var inputStream: FileInputStream? = null
+    private var region: MappedRegion? = null
+    private var position = 0L
+    private var end = 0L
+
+    override fun addTransferListener(transferListener: TransferListener) {
+        transferListeners.add(transferListener)
+    }
+
+    override fun open(dataSpec: DataSpec): Long {
+        val descriptor = openFileDescriptor(dataSpec.uri) ?: return openFallback(dataSpec)
+        transferListeners.forEach { it.onTransferInitializing(this, dataSpec, false) }
+        val bytesRemaining: Long
+        try {
+            assetFileDescriptor = descriptor
+            val stream = FileInputStream(descriptor.fileDescriptor)
+            inputStream = stream
+            val channel = stream.channel
+            val length = if (descriptor.length == AssetFileDescriptor.UNKNOWN_LENGTH) channel.size() - descriptor.startOffset else descriptor.length
+            val mappedRegion = MappedRegion(channel, descriptor.startOffset, length)
+            region = mappedRegion
+            if (dataSpec.position > length) {
+                throw DataSourceException(PlaybackException.ERROR_CODE_IO_READ_POSITION_OUT_OF_RANGE)
+            }
+            bytesRemaining = if (dataSpec.length == C.LENGTH_UNSET.toLong()) length - dataSpec.position else dataSpec.length
+            position = dataSpec.position
+            end = position + bytesRemaining
+            mappedRegion.map(position)
+        } catch (e: DataSourceException) {
+            closeDescriptor()
+            throw e
+        } catch (e: IOException) {
+            closeDescriptor()
+            throw DataSourceException(e, PlaybackException.ERROR_CODE_IO_UNSPECIFIED)
+        }
+        this.dataSpec = dataSpec
+        transferListeners.forEach { it.onTransferStart(this, dataSpec, false) }
+        return bytesRemaining
+    }
+
+    /** @return descriptor of the uncompressed asset or raw resource of uri, null when it must be read as a stream */
+    private fun openFileDescriptor(uri: Uri): AssetFileDescriptor? =
+        try {
+            when (uri.scheme) {
+                "asset" -> {
+                    // same paths as AssetDataSource
+                    var path = uri.path?.removePrefix("/") ?: ""
+                    path = path.removePrefix("android_asset/")
+                    context.assets.openFd(path)
+                }
+                ContentResolver.SCHEME_ANDROID_RESOURCE -> rawResourceIdOf(uri)?.let { context.resources.openRawResourceFd(it) }
+                else -> null
+            }
+        } catch (e: Exception) {
+            // compressed, or missing: the stream data source reports the error
+            null
+        }
+
+    private fun rawResourceIdOf(uri: Uri): Int? {
+        val segments = uri.pathSegments
+        segments.lastOrNull()?.toIntOrNull()?.let { return it }
+        if (segments.size < 2) return null
+        val packageName = uri.host?.ifEmpty { null } ?: context.packageName
+        return context.resources.getIdentifier(segments[segments.size - 1], segments[segments.size - 2], packageName).takeIf { it != 0 }
+    }
+
+    private fun openFallback(dataSpec: DataSpec): Long {
+        val dataSource = if (dataSpec.uri.scheme == "asset") AssetDataSource(context) else DefaultDataSource(context, false)
+        transferListeners.forEach { dataSource.addTransferListener(it) }
+        fallback = dataSource
+        return dataSource.open(dataSpec)
+    }
+
+    override fun read(buffer: ByteArray, offset: Int, length: Int): Int {
+        fallback?.let { return it.read(buffer, offset, length) }
+        if (length == 0) return 0
+        val read = try {
+            region!!.read(position, end, buffer, offset, length)
+        } catch (e: IOException) {
+            throw DataSourceException(e, PlaybackException.ERROR_CODE_IO_UNSPECIFIED)
+        }
+        if (read == C.RESULT_END_OF_INPUT) return read
+        position += read
+        dataSpec?.let { spec -> transferListeners.forEach { it.onBytesTransferred(this, spec, false, read) } }
+        return read
+    }
+
+    override fun getUri(): Uri? = fallback?.uri ?: dataSpec?.uri
+
+    override fun close() {
+        val dataSource = fallback
+        fallback = null
+        if (dataSource != null) {
+            dataSource.close()
+            return
+        }
+        closeDescriptor()
+        dataSpec?.let { spec -> transferListeners.forEach { it.onTransferEnd(this, spec, false) } }
+        dataSpec = null
+    }
+
+    private fun closeDescriptor() {
+        region?.release()
+        region = null
+        try {
+            inputStream?.close()
+            assetFileDescriptor?.close()
+        } catch (e: IOException) {
+            // ignore
+        } finally {
+            inputStream = null
+            assetFileDescriptor = null
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.brentvatne.exoplayer
+
+import android.net.Uri
+import androidx.media3.common.C
+import androidx.media3.common.PlaybackException
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.datasource.DataSource
+import androidx.media3.datasource.DataSourceException
+import androidx.media3.datasource.DataSpec
+import androidx.media3.datasource.FileDataSource
+import androidx.media3.datasource.TransferListener
+import com.brentvatne.common.toolbox.DebugLog
+import com.brentvatne.react.BuildConfig
+import java.io.IOException
+import java.io.RandomAccessFile
+
+/**
+ * DataSource reading local files through memory mapping, used for file:// content, and for cache span files
+ * when enabled (see cacheReadFactory).
+ *
+ * Files are mapped by windows (see MappedRegion), so files over 2GB can be read, and reads are plain memory copies.
+ * Pages ahead of the read position are loaded in background (read-ahead), so seeks and fast playback do not wait for the disk.
+ * Other uris (content://, assets) and files which cannot be mapped are read by fallbackFactory.
+ */
+@UnstableApi
+class MappedFileDataSource(private val fallbackFactory: DataSource.Factory) : DataSource {
+
+    class Factory @JvmOverloads constructor(private val fallbackFactory: DataSource.Factory = FileDataSource.Factory()) : DataSource.Factory {
+        override fun createDataSource(): DataSource = MappedFileDataSource(fallbackFactory)
+    }
+
+    companion object {
+        private const val TAG = "MappedFileDataSource"
+
+        /**
+         * @return factory of the cache read data sources, mapped when enabled by the RNVideo_useMappedCacheReads gradle property
+         */
+        @JvmStatic
+        fun cacheReadFactory(): DataSource.Factory = if (BuildConfig.USE_MAPPED_CACHE_READS) Factory() else FileDataSource.Factory()
+    }
+
+    private val transferListeners = ArrayList<TransferListener>()
+    private var fallback: DataSource? = null
+    private var dataSpec: DataSpec? = null
+    private var file: RandomAccessFile? = null
+    private var region: MappedRegion? = null
+    private var position = 0L
+    private var end = 0L
+
+    override fun addTransferListener(transferListener: TransferListener) {
+        transferListeners.add(transferListener)
+    }
+
+    override fun open(dataSpec: DataSpec): Long {
+        val scheme = dataSpec.uri.scheme
+        val path = dataSpec.uri.path
+        if ((scheme != null && scheme != "file") || path == null) {
+            return openFallback(dataSpec)
+        }
+        transferListeners.forEach { it.onTransferInitializing(this, dataSpec, false) }
+        val bytesRemaining: Long
+        try {
+            val randomAccessFile = RandomAccessFile(path, "r")
+            file = randomAccessFile
+            val mappedRegion = MappedRegion(randomAccessFile.channel, 0, randomAccessFile.channel.size())
+            region = mappedRegion
+            if (dataSpec.position > mappedRegion.length) {
+                throw DataSourceException(PlaybackException.ERROR_CODE_IO_READ_POSITION_OUT_OF_RANGE)
+            }
+            bytesRemaining = if (dataSpec.length == C.LENGTH_UNSET.toLong()) mappedRegion.length - dataSpec.position else dataSpec.length
+            position = dataSpec.position
+            end = position + bytesRemaining
+            mappedRegion.map(position)
+        } catch (e: DataSourceException) {
+            closeFile()
+            throw e
+        } catch (e: IOException) {
+            // not a regular file, or mapping failed
+            DebugLog.w(TAG, "cannot map $path, reading it without mapping: $e")
+            closeFile()
+            return openFallback(dataSpec)
+        }
+        this.dataSpec = dataSpec
+        transferListeners.forEach { it.onTransferStart(this, dataSpec, false) }
+        return bytesRemaining
+    }
+
+    private fun openFallback(dataSpec: DataSpec): Long {
+        val dataSource = fallbackFactory.createDataSource()
+        transferListeners.forEach { dataSource.addTransferListener(it) }
+        fallback = dataSource
+        return dataSource.open(dataSpec)
+    }
+
+    override fun read(buffer: ByteArray, offset: Int, length: Int): Int {
+        fallback?.let { return it.read(buffer, offset, length) }
+        if (length == 0) return 0
+        val read = region!!.read(position, end, buffer, offset, length)
+        if (read == C.RESULT_END_OF_INPUT) return read
+        position += read
+        dataSpec?.let { spec -> transferListeners.forEach { it.onBytesTransferred(this, spec, false, read) } }
+        return read
+    }
+
+    override fun getUri(): Uri? = fallback?.uri ?: dataSpec?.uri
+
+    override fun getResponseHeaders(): Map<String, List<String>> = fallback?.responseHeaders ?: emptyMap()
+
+    override fun close() {
+        val dataSource = fallback
+        fallback = null
+        if (dataSource != null) {
+            dataSource.close()
+            return
+        }
+        closeFile()
+        dataSpec?.let { spec -> transferListeners.forEach { it.onTransferEnd(this, spec, false) } }
+        dataSpec = null
+    }
+
+    private fun closeFile() {
+        // mapped windows stay valid after the file is closed
+        region?.release()
+        region = null
+        try {
+            file?.close()
+        } catch (e: IOException) {
+            // ignore
+        } finally {
+            file = null
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.brentvatne.exoplayer
+
+import android.os.Process
+import androidx.media3.common.C
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.util.concurrent.Executors
+
+/**
+ * Read-only memory mapping of [start, start + length) of a file, mapped by windows of WINDOW_SIZE so that regions over 2GB can be read.
+ * Positions are relative to start. Each reader has its own region, reads of a region are not thread safe.
+ *
+ * Mappings are only released when collected, so a region maps one window at a time, smaller on 32-bit processes
+ * whose address space is scarce, and read-ahead loads pages of the current window instead of mapping more.
+ */
+internal class MappedRegion(private val channel: FileChannel, private val start: Long, val length: Long) {
+    companion object {
+        private val WINDOW_SIZE = (if (Process.is64Bit()) 32L else 8L) * 1024 * 1024
+        private const val READ_AHEAD_SIZE = 2L * 1024 * 1024
+        private const val PAGE_SIZE = 4096
+
+        // sum of the bytes read ahead, written so that the reads are not optimized out
+        @Volatile
+        private var readAheadSink = 0
+
+        private val readAheadExecutor = Executors.newSingleThreadExecutor { runnable ->
+            Thread(runnable, "RNVReadAhead").apply { isDaemon = true }
+        }
+    }
+
+    private var window: MappedByteBuffer? = null
+    private var windowStart = 0L
+    private var readAheadEnd = 0L
+
+    /** Map the window of position, to check that the region can be mapped before reading */
+    @Throws(IOException::class)
+    fun map(position: Long) {
+        if (position < length) {
+            windowOf(position)
+        }
+    }
+
+    /**
+     * Copy bytes at position to buffer, then load the pages ahead in background
+     * @param limit end of the bytes which will be read, pages are not loaded beyond
+     * @return number of bytes copied, C.RESULT_END_OF_INPUT at the end of the region
+     */
+    @Throws(IOException::class)
+    fun read(position: Long, limit: Long, buffer: ByteArray, offset: Int, length: Int): Int {
+        if (position >= minOf(limit, this.length)) return C.RESULT_END_OF_INPUT
+        val mapped = windowOf(position)
+        val offsetInWindow = (position - windowStart).toInt()
+        val read = minOf(length.toLong(), (mapped.limit() - offsetInWindow).toLong(), limit - position).toInt()
+        mapped.position(offsetInWindow)
+        mapped.get(buffer, offset, read)
+        readAhead(position + read, limit)
+        return read
+    }
+
+    /** Release the current window, it is unmapped once collected */
+    fun release() {
+        window = null
+        readAheadEnd = 0
+    }
+
+    private fun windowOf(position: Long): MappedByteBuffer {
+        window?.let { if (position >= windowStart && position < windowStart + it.limit()) return it }
+        val size = minOf(WINDOW_SIZE, length - position)
+        return channel.map(FileChannel.MapMode.READ_ONLY, start + position, size).also {
+            window = it
+            windowStart = position
+        }
+    }
+
+    /**
+     * Load the pages of the next READ_AHEAD_SIZE bytes of the current window in background, once half of the previous
+     * read-ahead is read. Pages are loaded by reading one byte of each, the window stays the only mapping.
+     */
+    private fun readAhead(position: Long, limit: Long) {
+        if (position + READ_AHEAD_SIZE / 2 < readAheadEnd) return
+        val mapped = window ?: return
+        val aheadStart = maxOf(position, readAheadEnd)
+        val aheadEnd = minOf(aheadStart + READ_AHEAD_SIZE, limit, windowStart + mapped.limit())
+        if (aheadEnd - aheadStart < READ_AHEAD_SIZE / 2) return
+        readAheadEnd = aheadEnd
+        // absolute reads of a duplicate do not move the position used by the reader
+        val buffer = mapped.duplicate()
+        val from = (aheadStart - windowStart).toInt()
+        val to = (aheadEnd - windowStart).toInt()
+        readAheadExecutor.execute { touchPages(buffer, from, to) }
+    }
+
+    private fun touchPages(buffer: ByteBuffer, from: Int, to: Int) {
+        var sum = 0
+        var index = from
+        while (index < to) {
+            sum += buffer.get(index)
+            index += PAGE_SIZE
+        }
+        readAheadSink = sum
+    }
+}
@@ -0,0 +1,176 @@
+package com.brentvatne.exoplayer
+
+import android.content.Context
+import android.content.SharedPreferences
+import android.util.Base64
+import androidx.media3.common.C
+import androidx.media3.common.Format
+import androidx.media3.datasource.HttpDataSource
+import androidx.media3.exoplayer.drm.DefaultDrmSessionManager
+import androidx.media3.exoplayer.drm.DrmSessionEventListener
+import androidx.media3.exoplayer.drm.FrameworkMediaDrm
+import androidx.media3.exoplayer.drm.OfflineLicenseHelper
+import com.brentvatne.common.api.DRMProps
+import com.brentvatne.common.toolbox.DebugLog
+import java.util.UUID
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+
+/**
+ * Persistent store of offline Widevine licenses.
+ * Licenses are acquired in background with OfflineLicenseHelper once a protected content has been played,
+ * then their key set id is stored by content id and license server so the next playbacks
+ * restore the keys with DefaultDrmSessionManager.MODE_PLAYBACK instead of requesting the license server.
+ * Licenses are renewed in background when half of their duration has elapsed.
+ */
+object OfflineLicenseCache {
+    private const val TAG = "OfflineLicenseCache"
+    private const val PREFERENCES_NAME = "RNVOfflineLicenses"
+
+    // do not reuse a license which expires in less than this delay
+    private const val EXPIRY_MARGIN_MS = 60_000L
+
+    private val executor = Executors.newSingleThreadExecutor()
+    private val pendingRequests = ConcurrentHashMap.newKeySet<String>()
+
+    private class Entry(val keySetId: ByteArray, val acquiredAtMs: Long, val expiresAtMs: Long)
+
+    @JvmStatic
+    fun isSupported(uuid: UUID, drmProps: DRMProps): Boolean =
+        drmProps.persistLicense &&
+            uuid == C.WIDEVINE_UUID &&
+            !drmProps.contentId.isNullOrEmpty() &&
+            !drmProps.drmLicenseServer.isNullOrEmpty()
+
+    /**
+     * @return the key set id of a valid stored license, or null if a license request is needed
+     */
+    @JvmStatic
+    fun getKeySetId(context: Context, uuid: UUID, drmProps: DRMProps, dataSourceFactory: HttpDataSource.Factory): ByteArray? {
+        if (!isSupported(uuid, drmProps)) return null
+        val key = cacheKey(drmProps)
+        val entry = read(context, key) ?: return null
+        val now = System.currentTimeMillis()
+        if (entry.expiresAtMs - EXPIRY_MARGIN_MS <= now) {
+            DebugLog.d(TAG, "license expired for ${drmProps.contentId}")
+            remove(context, key)
+            return null
+        }
+        if (now >= entry.acquiredAtMs + (entry.expiresAtMs - entry.acquiredAtMs) / 2) {
+            renewAsync(context, uuid, drmProps, dataSourceFactory, entry)
+        }
+        return entry.keySetId
+    }
+
+    /**
+     * Acquire an offline license for format in background, if none is stored yet.
+     * format must carry the DrmInitData of the content.
+     */
+    @JvmStatic
+    fun acquireAsync(context: Context, uuid: UUID, drmProps: DRMProps, format: Format, dataSourceFactory: HttpDataSource.Factory) {
+        if (!isSupported(uuid, drmProps) || format.drmInitData == null) return
+        val key = cacheKey(drmProps)
+        if (read(context, key) != null) return
+        runExclusive(key) { download(context, key, uuid, drmProps, format, dataSourceFactory) }
+    }
+
+    /**
+     * Same as acquireAsync, on the calling thread.
+     * @return true if a license is stored for drmProps
+     */
+    @JvmStatic
+    fun acquire(context: Context, uuid: UUID, drmProps: DRMProps, format: Format, dataSourceFactory: HttpDataSource.Factory): Boolean {
+        if (!isSupported(uuid, drmProps) || format.drmInitData == null) return false
+        val key = cacheKey(drmProps)
+        if (read(context, key) == null) {
+            download(context, key, uuid, drmProps, format, dataSourceFactory)
+        }
+        return true
+    }
+
+    /**
+     * Remove stored license of drmProps, to be called when playback with it failed.
+     * @return true if a license was stored
+     */
+    @JvmStatic
+    fun invalidate(context: Context, drmProps: DRMProps?): Boolean {
+        if (drmProps == null || drmProps.contentId.isNullOrEmpty()) return false
+        val key = cacheKey(drmProps)
+        if (read(context, key) == null) return false
+        remove(context, key)
+        return true
+    }
+
+    private fun renewAsync(context: Context, uuid: UUID, drmProps: DRMProps, dataSourceFactory: HttpDataSource.Factory, entry: Entry) {
+        val key = cacheKey(drmProps)
+        runExclusive(key) {
+            val helper = buildHelper(uuid, drmProps, dataSourceFactory)
+            try {
+                val keySetId = helper.renewLicense(entry.keySetId)
+                store(context, key, keySetId, helper)
+                DebugLog.d(TAG, "renewed offline license for ${drmProps.contentId}")
+            } finally {
+                helper.release()
+            }
+        }
+    }
+
+    private fun download(context: Context, key: String, uuid: UUID, drmProps: DRMProps, format: Format, dataSourceFactory: HttpDataSource.Factory) {
+        val helper = buildHelper(uuid, drmProps, dataSourceFactory)
+        try {
+            val keySetId = helper.downloadLicense(format)
+            store(context, key, keySetId, helper)
+            DebugLog.d(TAG, "stored offline license for ${drmProps.contentId}")
+        } finally {
+            helper.release()
+        }
+    }
+
+    private fun runExclusive(key: String, task: () -> Unit) {
+        if (!pendingRequests.add(key)) return
+        executor.execute {
+            try {
+                task()
+            } catch (e: Exception) {
+                DebugLog.w(TAG, "offline license request failed: $e")
+            } finally {
+                pendingRequests.remove(key)
+            }
+        }
+    }
+
+    private fun buildHelper(uuid: UUID, drmProps: DRMProps, dataSourceFactory: HttpDataSource.Factory): OfflineLicenseHelper {
+        val drmSessionManager = DefaultDrmSessionManager.Builder()
+            .setUuidAndExoMediaDrmProvider(uuid, FrameworkMediaDrm.DEFAULT_PROVIDER)
+            .build(DRMManager.buildDrmCallback(drmProps, dataSourceFactory))
+        return OfflineLicenseHelper(drmSessionManager, DrmSessionEventListener.EventDispatcher())
+    }
+
+    private fun store(context: Context, key: String, keySetId: ByteArray, helper: OfflineLicenseHelper) {
+        val remainingSec = helper.getLicenseDurationRemainingSec(keySetId).first
+        val now = System.currentTimeMillis()
+        val expiresAtMs = if (remainingSec == Long.MAX_VALUE) Long.MAX_VALUE else now + remainingSec * 1000
+        val value = Base64.encodeToString(keySetId, Base64.NO_WRAP) + "|" + now + "|" + expiresAtMs
+        preferences(context).edit().putString(key, value).apply()
+    }
+
+    private fun read(context: Context, key: String): Entry? {
+        val value = preferences(context).getString(key, null) ?: return null
+        val parts = value.split("|")
+        if (parts.size != 3) return null
+        return try {
+            Entry(Base64.decode(parts[0], Base64.NO_WRAP), parts[1].toLong(), parts[2].toLong())
+        } catch (e: IllegalArgumentException) {
+            null
+        }
+    }
+
+    private fun remove(context: Context, key: String) {
+        preferences(context).edit().remove(key).apply()
+    }
+
+    private fun cacheKey(drmProps: DRMProps): String = drmProps.drmLicenseServer + "|" + drmProps.contentId
+
+    private fun preferences(context: Context): SharedPreferences =
+        context.applicationContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE)
+}
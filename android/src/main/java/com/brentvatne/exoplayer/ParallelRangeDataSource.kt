@@ -0,0 +1,278 @@
+package com.brentvatne.exoplayer
+
+import android.net.Uri
+import android.os.SystemClock
+import androidx.media3.common.C
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.datasource.DataSource
+import androidx.media3.datasource.DataSpec
+import androidx.media3.datasource.HttpUtil
+import androidx.media3.datasource.TransferListener
+import com.brentvatne.common.api.ParallelRangeProps
+import java.io.EOFException
+import java.io.IOException
+import java.io.InterruptedIOException
+import java.util.concurrent.Executors
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * DataSource loading progressive content with concurrent range requests.
+ *
+ * The first range is read from the request made by open, whose Content-Range header gives the content length.
+ * The rest is split in chunks loaded by up to maxConcurrency workers, and read in order from a bounded ring of chunks.
+ * Chunk size follows the throughput measured on each request, workers are added while the reader waits for data.
+ * Non http content, content of unknown length and servers ignoring ranges are read with a single request.
+ */
+@UnstableApi
+class ParallelRangeDataSource(private val upstreamFactory: DataSource.Factory, private val props: ParallelRangeProps) : DataSource {
+
+    class Factory(private val upstreamFactory: DataSource.Factory, private val props: ParallelRangeProps) : DataSource.Factory {
+        override fun createDataSource(): DataSource = ParallelRangeDataSource(upstreamFactory, props)
+    }
+
+    companion object {
+        private const val MIN_CHUNK_SIZE = 128 * 1024
+        private const val MAX_CHUNK_SIZE = 2 * 1024 * 1024
+
+        // a chunk should take about this time to load, long enough to amortize the request latency
+        private const val TARGET_CHUNK_DURATION_MS = 1000L
+
+        private val executor = Executors.newCachedThreadPool { runnable ->
+            Thread(runnable, "RNVParallelRange").apply { isDaemon = true }
+        }
+    }
+
+    private class Chunk(val position: Long, val length: Int, val buffer: ByteArray) {
+        // guarded by the lock of the loader
+        var loaded = 0
+        var error: IOException? = null
+        var readPosition = 0
+    }
+
+    private val transferListeners = ArrayList<TransferListener>()
+    private var leader: DataSource? = null
+    private var isSequential = false
+
+    // bytes of the first range left to read from the leader
+    private var leaderRemaining = 0L
+    private var loader: RangeLoader? = null
+    private var uri: Uri? = null
+    private var responseHeaders: Map<String, List<String>> = emptyMap()
+
+    override fun addTransferListener(transferListener: TransferListener) {
+        transferListeners.add(transferListener)
+    }
+
+    override fun open(dataSpec: DataSpec): Long {
+        val scheme = dataSpec.uri.scheme
+        val chunkSize = props.chunkSizeKB * 1024L
+        val dataSource = createUpstream()
+        leader = dataSource
+        isSequential = (scheme != "http" && scheme != "https") ||
+            (dataSpec.length != C.LENGTH_UNSET.toLong() && dataSpec.length <= 2 * chunkSize)
+        if (isSequential) {
+            return openSequential(dataSource, dataSpec)
+        }
+
+        dataSource.open(dataSpec.subrange(0, chunkSize))
+        val documentSize = dataSource.responseHeaders.entries
+            .firstOrNull { it.key.equals("Content-Range", ignoreCase = true) }
+            ?.value?.firstOrNull()
+            .let { HttpUtil.getDocumentSize(it) }
+        if (documentSize == C.LENGTH_UNSET.toLong()) {
+            // ranges are not supported, or the length is unknown
+            dataSource.close()
+            isSequential = true
+            return openSequential(dataSource, dataSpec)
+        }
+
+        val end = if (dataSpec.length != C.LENGTH_UNSET.toLong()) dataSpec.position + dataSpec.length else documentSize
+        val length = end - dataSpec.position
+        leaderRemaining = minOf(chunkSize, length)
+        uri = dataSource.uri
+        responseHeaders = dataSource.responseHeaders
+        if (length > leaderRemaining) {
+            loader = RangeLoader(dataSpec, dataSpec.position + leaderRemaining, end).also { it.start() }
+        }
+        return length
+    }
+
+    private fun openSequential(dataSource: DataSource, dataSpec: DataSpec): Long {
+        val length = dataSource.open(dataSpec)
+        uri = dataSource.uri
+        responseHeaders = dataSource.responseHeaders
+        return length
+    }
+
+    override fun read(buffer: ByteArray, offset: Int, length: Int): Int {
+        if (length == 0) return 0
+        if (isSequential) {
+            return leader!!.read(buffer, offset, length)
+        }
+        if (leaderRemaining > 0) {
+            val read = leader!!.read(buffer, offset, minOf(length.toLong(), leaderRemaining).toInt())
+            if (read == C.RESULT_END_OF_INPUT) throw EOFException()
+            leaderRemaining -= read
+            if (leaderRemaining == 0L) {
+                closeLeader()
+            }
+            return read
+        }
+        return loader?.read(buffer, offset, length) ?: C.RESULT_END_OF_INPUT
+    }
+
+    override fun getUri(): Uri? = uri
+
+    override fun getResponseHeaders(): Map<String, List<String>> = responseHeaders
+
+    override fun close() {
+        loader?.close()
+        loader = null
+        uri = null
+        responseHeaders = emptyMap()
+        leaderRemaining = 0
+        closeLeader()
+    }
+
+    private fun closeLeader() {
+        val dataSource = leader ?: return
+        leader = null
+        dataSource.close()
+    }
+
+    private fun createUpstream(): DataSource {
+        val dataSource = upstreamFactory.createDataSource()
+        transferListeners.forEach { dataSource.addTransferListener(it) }
+        return dataSource
+    }
+
+    /** Loads [start, end) of dataSpec in chunks, with a bounded number of chunks loaded or waiting to be read */
+    private inner class RangeLoader(private val dataSpec: DataSpec, start: Long, private val end: Long) {
+        private val lock = ReentrantLock()
+        private val changed = lock.newCondition()
+
+        // guarded by lock
+        private val chunks = ArrayDeque<Chunk>()
+        private val freeBuffers = ArrayList<ByteArray>()
+        private val maxChunks = props.maxConcurrency + 1
+        private var nextPosition = start
+        private var readPosition = start
+        private var chunkSize = props.chunkSizeKB * 1024
+        private var workers = 0
+        private var isClosed = false
+
+        fun start() {
+            lock.withLock {
+                addWorker()
+            }
+        }
+
+        fun read(buffer: ByteArray, offset: Int, length: Int): Int {
+            lock.withLock {
+                while (true) {
+                    if (readPosition >= end) return C.RESULT_END_OF_INPUT
+                    val chunk = chunks.firstOrNull()
+                    if (chunk != null && chunk.readPosition < chunk.loaded) {
+                        val read = minOf(length, chunk.loaded - chunk.readPosition)
+                        System.arraycopy(chunk.buffer, chunk.readPosition, buffer, offset, read)
+                        chunk.readPosition += read
+                        readPosition += read
+                        if (chunk.readPosition == chunk.length) {
+                            chunks.removeFirst()
+                            freeBuffers.add(chunk.buffer)
+                            changed.signalAll()
+                        }
+                        return read
+                    }
+                    chunk?.error?.let { throw it }
+                    // the reader is faster than the loading, load one more chunk at the same time
+                    if (workers < props.maxConcurrency && nextPosition < end && chunks.size < maxChunks) {
+                        addWorker()
+                    }
+                    try {
+                        changed.await()
+                    } catch (e: InterruptedException) {
+                        Thread.currentThread().interrupt()
+                        throw InterruptedIOException()
+                    }
+                }
+            }
+        }
+
+        fun close() {
+            lock.withLock {
+                isClosed = true
+                chunks.clear()
+                freeBuffers.clear()
+                changed.signalAll()
+            }
+        }
+
+        private fun addWorker() {
+            workers++
+            executor.execute {
+                try {
+                    while (true) {
+                        val chunk = lock.withLock { nextChunk() } ?: break
+                        load(chunk)
+                    }
+                } finally {
+                    lock.withLock { workers-- }
+                }
+            }
+        }
+
+        /** @return the next chunk to load once there is room in the ring, null when closed or when all chunks are loaded */
+        private fun nextChunk(): Chunk? {
+            while (!isClosed && nextPosition < end && chunks.size >= maxChunks) {
+                changed.awaitUninterruptibly()
+            }
+            if (isClosed || nextPosition >= end) return null
+            val length = minOf(chunkSize.toLong(), end - nextPosition).toInt()
+            val buffer = freeBuffers.removeLastOrNull()?.takeIf { it.size >= length } ?: ByteArray(length)
+            val chunk = Chunk(nextPosition, length, buffer)
+            nextPosition += length
+            chunks.addLast(chunk)
+            return chunk
+        }
+
+        private fun load(chunk: Chunk) {
+            val dataSource = createUpstream()
+            val startMs = SystemClock.elapsedRealtime()
+            try {
+                dataSource.open(dataSpec.subrange(chunk.position - dataSpec.position, chunk.length.toLong()))
+                var loaded = 0
+                while (loaded < chunk.length) {
+                    if (lock.withLock { isClosed }) return
+                    val read = dataSource.read(chunk.buffer, loaded, chunk.length - loaded)
+                    if (read == C.RESULT_END_OF_INPUT) throw EOFException()
+                    loaded += read
+                    lock.withLock {
+                        chunk.loaded = loaded
+                        changed.signalAll()
+                    }
+                }
+                onChunkLoaded(chunk.length, SystemClock.elapsedRealtime() - startMs)
+            } catch (e: IOException) {
+                lock.withLock {
+                    chunk.error = e
+                    changed.signalAll()
+                }
+            } finally {
+                try {
+                    dataSource.close()
+                } catch (e: IOException) {
+                    // ignore
+                }
+            }
+        }
+
+        private fun onChunkLoaded(length: Int, durationMs: Long) {
+            val bytesPerSecond = length * 1000L / maxOf(durationMs, 1)
+            lock.withLock {
+                chunkSize = (bytesPerSecond * TARGET_CHUNK_DURATION_MS / 1000).coerceIn(MIN_CHUNK_SIZE.toLong(), MAX_CHUNK_SIZE.toLong()).toInt()
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.brentvatne.exoplayer
+
+import androidx.media3.common.C
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.datasource.cache.Cache
+import androidx.media3.datasource.cache.CacheEvictor
+import androidx.media3.datasource.cache.CacheSpan
+import java.util.TreeSet
+
+/**
+ * Evictor keeping pinned content and evicting other spans by weighted LRU, see RNVCachePins.
+ *
+ * Spans are kept ordered by eviction score as they are added and removed, they are only ordered again
+ * when pins or weights change. Pinned content is kept up to MAX_PINNED_FRACTION of maxBytes, the least
+ * recently used pinned spans beyond are evicted, so the cache never grows over maxBytes.
+ */
+@UnstableApi
+class PinningCacheEvictor(private val maxBytes: Long) : CacheEvictor {
+    companion object {
+        // share of the cache which pinned content can use, the rest is left to streaming
+        private const val MAX_PINNED_FRACTION = 0.8
+    }
+
+    private class Node(val span: CacheSpan, val mediaId: String?, val order: Long) {
+        var isPinned = false
+        var score = 0L
+    }
+
+    private val comparator = compareBy<Node>({ it.score }, { it.order })
+
+    // spans are identified by instance, the cache notifies removals with the instance it added
+    private val nodes = HashMap<CacheSpan, Node>()
+    private val unpinned = TreeSet(comparator)
+    private val pinned = TreeSet(comparator)
+    private val maxPinnedBytes = (maxBytes * MAX_PINNED_FRACTION).toLong()
+    private var currentSize = 0L
+    private var pinnedSize = 0L
+    private var nextOrder = 0L
+    private var pinsVersion = RNVCachePins.version
+
+    override fun requiresCacheSpanTouches(): Boolean = true
+
+    override fun onCacheInitialized() {}
+
+    override fun onStartFile(cache: Cache, key: String, position: Long, length: Long) {
+        RNVCachePins.onStartFile(cache, key)
+        if (length != C.LENGTH_UNSET.toLong()) {
+            evictCache(cache, length)
+        }
+    }
+
+    override fun onSpanAdded(cache: Cache, span: CacheSpan) {
+        add(span, RNVCachePins.mediaIdOf(cache, span.key))
+        evictCache(cache, 0)
+    }
+
+    override fun onSpanRemoved(cache: Cache, span: CacheSpan) {
+        remove(span)
+    }
+
+    override fun onSpanTouched(cache: Cache, oldSpan: CacheSpan, newSpan: CacheSpan) {
+        // same content, its media id is unchanged
+        val node = remove(oldSpan)
+        add(newSpan, node?.mediaId ?: RNVCachePins.mediaIdOf(cache, newSpan.key))
+        evictCache(cache, 0)
+    }
+
+    private fun add(span: CacheSpan, mediaId: String?) {
+        val node = Node(span, mediaId, nextOrder++)
+        nodes[span] = node
+        currentSize += span.length
+        insert(node)
+    }
+
+    private fun remove(span: CacheSpan): Node? {
+        val node = nodes.remove(span) ?: return null
+        currentSize -= span.length
+        if (node.isPinned) {
+            pinned.remove(node)
+            pinnedSize -= span.length
+        } else {
+            unpinned.remove(node)
+        }
+        return node
+    }
+
+    private fun insert(node: Node) {
+        node.isPinned = RNVCachePins.isPinned(node.mediaId)
+        node.score = RNVCachePins.scoreOf(node.span, node.mediaId)
+        if (node.isPinned) {
+            pinned.add(node)
+            pinnedSize += node.span.length
+        } else {
+            unpinned.add(node)
+        }
+    }
+
+    /** Order spans again after a change of pins or weights */
+    private fun updatePins() {
+        val version = RNVCachePins.version
+        if (version == pinsVersion) return
+        pinsVersion = version
+        pinned.clear()
+        unpinned.clear()
+        pinnedSize = 0
+        nodes.values.forEach { insert(it) }
+    }
+
+    private fun evictCache(cache: Cache, requiredSpace: Long) {
+        updatePins()
+        while (pinnedSize > maxPinnedBytes) {
+            val node = pinned.first()
+            RNVCachePins.onPinnedBytesEvicted(node.span.length)
+            evict(cache, node)
+        }
+        while (currentSize + requiredSpace > maxBytes) {
+            val node = unpinned.firstOrNull() ?: pinned.firstOrNull() ?: break
+            if (node.isPinned) {
+                RNVCachePins.onPinnedBytesEvicted(node.span.length)
+            }
+            evict(cache, node)
+        }
+    }
+
+    private fun evict(cache: Cache, node: Node) {
+        cache.removeSpan(node.span)
+        // removeSpan notifies onSpanRemoved, unless the span was already gone
+        remove(node.span)
+    }
+}
@@ -0,0 +1,56 @@
+package com.brentvatne.exoplayer
+
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.datasource.DataSpec
+import androidx.media3.datasource.cache.CacheKeyFactory
+import com.brentvatne.common.api.Source
+import com.brentvatne.react.ReactNativeVideoManager
+
+/**
+ * Builds cache keys from the cache key rules of a source:
+ * named query parameters are removed, and with useMediaId the scheme and host are replaced by the metadata id,
+ * so the same resource served with another signature or from another CDN host hits the cache.
+ */
+@UnstableApi
+class RNVCacheKeyFactory(private val stripQueryParameters: Set<String>, private val mediaId: String?) : CacheKeyFactory {
+
+    override fun buildCacheKey(dataSpec: DataSpec): String {
+        dataSpec.key?.let { return it }
+        var uri = dataSpec.uri
+        if (stripQueryParameters.isNotEmpty() && uri.query != null) {
+            val builder = uri.buildUpon().clearQuery()
+            for (name in uri.queryParameterNames) {
+                if (name in stripQueryParameters) continue
+                for (value in uri.getQueryParameters(name)) {
+                    builder.appendQueryParameter(name, value)
+                }
+            }
+            uri = builder.build()
+        }
+        if (mediaId == null) {
+            return uri.toString()
+        }
+        val query = uri.encodedQuery
+        return MEDIA_ID_SCHEME + mediaId + uri.encodedPath.orEmpty() + if (query.isNullOrEmpty()) "" else "?$query"
+    }
+
+    companion object {
+        const val MEDIA_ID_SCHEME = "rnv-media:"
+
+        /**
+         * @return the cache key factory of source, from plugins or from its cache key rules.
+         * Keys it builds are associated to the media id of source, see RNVCachePins.
+         */
+        @JvmStatic
+        fun forSource(source: Source): CacheKeyFactory {
+            val props = source.cacheKeyProps
+            val mediaId = source.metadata?.id?.takeIf { props?.useMediaId == true && it >= 0 }?.toString()
+            val factory = if (props == null || (props.stripQueryParameters.isEmpty() && mediaId == null)) {
+                CacheKeyFactory.DEFAULT
+            } else {
+                RNVCacheKeyFactory(props.stripQueryParameters.toSet(), mediaId)
+            }
+            return RNVCachePins.keyFactoryFor(source, ReactNativeVideoManager.getInstance().overrideCacheKeyFactory(source, factory) ?: factory)
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.brentvatne.exoplayer
+
+import android.content.Context
+import androidx.media3.common.C
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.datasource.DataSpec
+import androidx.media3.datasource.cache.Cache
+import androidx.media3.datasource.cache.CacheKeyFactory
+import androidx.media3.datasource.cache.CacheSpan
+import androidx.media3.datasource.cache.ContentMetadataMutations
+import com.brentvatne.common.api.Source
+import com.brentvatne.common.toolbox.DebugLog
+import org.json.JSONObject
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Pins and eviction weights of cached content, by media id (metadata.id of sources).
+ *
+ * The cache keys built for a source with a media id are recorded (see keyFactoryFor), and when the cache writes
+ * one of them the media id is stored in the metadata of the cached content, so exactly the content written for
+ * the source is associated to it, whatever its path or host.
+ * Pinned content is not evicted by PinningCacheEvictor while it fits in its share of the cache,
+ * weighted content is evicted later than it would be by plain LRU.
+ * Pins and weights are persisted, associations are persisted by the cache.
+ */
+@UnstableApi
+object RNVCachePins {
+    private const val TAG = "RNVCachePins"
+    private const val PREFERENCES_NAME = "RNVCachePins"
+    private const val MAX_UNPINNED_ENTRIES = 200
+
+    // key of the media id in the metadata of cached content
+    private const val METADATA_MEDIA_ID = "rnv-media-id"
+
+    // recorded keys waiting to be written by the cache, the oldest are dropped first
+    private const val MAX_RECORDED_KEYS = 1024
+
+    // a weight of 1 makes content look that much more recently used
+    private const val WEIGHT_WINDOW_MS = 7 * 24 * 60 * 60 * 1000L
+
+    private class Entry(var pinned: Boolean, var weight: Float)
+
+    private val lock = Any()
+
+    // insertion ordered, the oldest unpinned entries are dropped first
+    private val entries = LinkedHashMap<String, Entry>()
+    private var isLoaded = false
+    private lateinit var appContext: Context
+    private val saveExecutor = Executors.newSingleThreadExecutor()
+
+    // media id of keys built by recording key factories, guarded by itself
+    private val recordedKeys = object : LinkedHashMap<String, String>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, String>?): Boolean = size > MAX_RECORDED_KEYS
+    }
+
+    // snapshots read by evictors without locking
+    @Volatile
+    private var pinnedMediaIds: Set<String> = emptySet()
+
+    @Volatile
+    private var weights: Map<String, Float> = emptyMap()
+
+    // pinned bytes evicted because pinned content exceeded its share of a cache
+    private val pinnedBytesEvicted = AtomicLong()
+
+    /** Incremented when pins or weights change, evictors then order their spans again */
+    @Volatile
+    var version = 0
+        private set
+
+    /** Load pins, to be called before caches are opened */
+    @JvmStatic
+    fun ensureLoaded(context: Context) {
+        synchronized(lock) {
+            if (isLoaded) return
+            isLoaded = true
+            appContext = context.applicationContext
+            val preferences = appContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE)
+            for ((mediaId, value) in preferences.all) {
+                try {
+                    val json = JSONObject(value as String)
+                    entries[mediaId] = Entry(json.optBoolean("pinned"), json.optDouble("weight", 0.0).toFloat())
+                } catch (e: Exception) {
+                    // ignore corrupted entry
+                }
+            }
+            updateSnapshots()
+        }
+    }
+
+    /**
+     * @return cacheKeyFactory recording the keys it builds for the media id of source,
+     * cacheKeyFactory itself when source has no media id
+     */
+    @JvmStatic
+    fun keyFactoryFor(source: Source, cacheKeyFactory: CacheKeyFactory): CacheKeyFactory {
+        val mediaId = source.metadata?.id?.takeIf { it >= 0 }?.toString() ?: return cacheKeyFactory
+        return CacheKeyFactory { dataSpec: DataSpec ->
+            cacheKeyFactory.buildCacheKey(dataSpec).also { key ->
+                synchronized(recordedKeys) { recordedKeys[key] = mediaId }
+            }
+        }
+    }
+
+    /**
+     * Store the media id of key in the metadata of its cached content, called by evictors when the cache starts writing key
+     */
+    @JvmStatic
+    fun onStartFile(cache: Cache, key: String) {
+        val mediaId = synchronized(recordedKeys) { recordedKeys.remove(key) } ?: return
+        if (mediaIdOf(cache, key) == mediaId) return
+        try {
+            cache.applyContentMetadataMutations(key, ContentMetadataMutations().set(METADATA_MEDIA_ID, mediaId))
+        } catch (e: Cache.CacheException) {
+            DebugLog.w(TAG, "cannot associate $key to $mediaId: $e")
+        }
+    }
+
+    /** @return media id associated to the cached content of key, null if there is none */
+    @JvmStatic
+    fun mediaIdOf(cache: Cache, key: String): String? = cache.getContentMetadata(key).get(METADATA_MEDIA_ID, null as String?)
+
+    @JvmStatic
+    fun pin(context: Context, mediaId: String) = update(context, mediaId) { it.pinned = true }
+
+    @JvmStatic
+    fun unpin(context: Context, mediaId: String) = update(context, mediaId) { it.pinned = false }
+
+    /** @param weight from 0 (plain LRU) to 1, like the probability that the user resumes the content */
+    @JvmStatic
+    fun setWeight(context: Context, mediaId: String, weight: Float) = update(context, mediaId) { it.weight = weight.coerceIn(0f, 1f) }
+
+    @JvmStatic
+    fun isPinned(mediaId: String?): Boolean = mediaId != null && mediaId in pinnedMediaIds
+
+    /** @return eviction score of span of media id, spans with the lowest score are evicted first */
+    @JvmStatic
+    fun scoreOf(span: CacheSpan, mediaId: String?): Long {
+        val weight = mediaId?.let { weights[it] } ?: 0f
+        return span.lastTouchTimestamp + (weight * WEIGHT_WINDOW_MS).toLong()
+    }
+
+    /** Called by evictors when pinned content over its share of the cache is evicted */
+    @JvmStatic
+    fun onPinnedBytesEvicted(bytes: Long) {
+        pinnedBytesEvicted.addAndGet(bytes)
+    }
+
+    /** @return pinned and evictable bytes of cache, to be called off the main thread */
+    @JvmStatic
+    fun getStats(cache: Cache?): Map<String, Any> {
+        var pinnedBytes = 0L
+        var evictableBytes = 0L
+        cache?.keys?.forEach { key ->
+            val bytes = cache.getCachedBytes(key, 0, C.LENGTH_UNSET.toLong())
+            if (isPinned(mediaIdOf(cache, key))) pinnedBytes += bytes else evictableBytes += bytes
+        }
+        val pinnedMediaIds = synchronized(lock) { entries.filterValues { it.pinned }.keys.toList() }
+        return mapOf(
+            "pinnedBytes" to pinnedBytes.toDouble(),
+            "evictableBytes" to evictableBytes.toDouble(),
+            "pinnedMediaIds" to pinnedMediaIds,
+            "pinnedBytesEvicted" to pinnedBytesEvicted.get().toDouble()
+        )
+    }
+
+    private fun update(context: Context, mediaId: String, block: (Entry) -> Unit) {
+        ensureLoaded(context)
+        synchronized(lock) {
+            val entry = entries.remove(mediaId) ?: Entry(false, 0f)
+            block(entry)
+            entries[mediaId] = entry
+            val removed = trimEntries()
+            updateSnapshots()
+            save(mediaId, entry, removed)
+        }
+    }
+
+    /** @return media ids of the dropped entries */
+    private fun trimEntries(): List<String> {
+        val removed = ArrayList<String>()
+        var unpinned = entries.values.count { !it.pinned }
+        val iterator = entries.entries.iterator()
+        while (unpinned > MAX_UNPINNED_ENTRIES && iterator.hasNext()) {
+            val entry = iterator.next()
+            if (!entry.value.pinned) {
+                removed.add(entry.key)
+                iterator.remove()
+                unpinned--
+            }
+        }
+        return removed
+    }
+
+    private fun updateSnapshots() {
+        pinnedMediaIds = entries.filterValues { it.pinned }.keys.toHashSet()
+        weights = entries.filterValues { !it.pinned && it.weight > 0f }.mapValues { it.value.weight }
+        version++
+    }
+
+    /** Write the changed entry only, in background */
+    private fun save(mediaId: String, entry: Entry, removed: List<String>) {
+        val json = JSONObject()
+            .put("pinned", entry.pinned)
+            .put("weight", entry.weight.toDouble())
+            .toString()
+        saveExecutor.execute {
+            val editor = appContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE).edit()
+            removed.forEach { editor.remove(it) }
+            editor.putString(mediaId, json).apply()
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.brentvatne.exoplayer
+
+import androidx.media3.common.C
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.datasource.DataSource
+import androidx.media3.datasource.DataSpec
+import androidx.media3.datasource.TransferListener
+import androidx.media3.datasource.cache.Cache
+import androidx.media3.datasource.cache.CacheDataSource
+import androidx.media3.datasource.cache.CacheEvictor
+import androidx.media3.datasource.cache.CacheSpan
+import androidx.media3.datasource.cache.ContentMetadata
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Counters of the disk cache: bytes read from cache and from network, in total and per playback session,
+ * cache bypasses and evictions. Used to tune the cache size from real data.
+ */
+@UnstableApi
+object RNVCacheStats {
+    /** Bytes read by one view for its current source */
+    class Session(val id: Int) {
+        val cacheBytes = AtomicLong()
+        val networkBytes = AtomicLong()
+    }
+
+    private val cacheBytes = AtomicLong()
+    private val networkBytes = AtomicLong()
+    private val cacheIgnored = AtomicInteger()
+    private val evictions = AtomicInteger()
+    private val evictedBytes = AtomicLong()
+    private val sessions = ConcurrentHashMap<Int, Session>()
+
+    /** Start counting bytes of a new source of view id, replaces the previous session of the view */
+    @JvmStatic
+    fun startSession(id: Int): Session = Session(id).also { sessions[id] = it }
+
+    @JvmStatic
+    fun endSession(session: Session) {
+        sessions.remove(session.id, session)
+    }
+
+    /** @return listener of the cache data sources of session */
+    fun eventListener(session: Session?): CacheDataSource.EventListener =
+        object : CacheDataSource.EventListener {
+            override fun onCachedBytesRead(cacheSizeBytes: Long, cachedBytesRead: Long) {
+                cacheBytes.addAndGet(cachedBytesRead)
+                session?.cacheBytes?.addAndGet(cachedBytesRead)
+            }
+
+            override fun onCacheIgnored(reason: Int) {
+                cacheIgnored.incrementAndGet()
+            }
+        }
+
+    /** @return factory counting bytes transferred from network by data sources of upstreamFactory */
+    fun countingFactory(upstreamFactory: DataSource.Factory, session: Session?): DataSource.Factory {
+        val listener = object : TransferListener {
+            override fun onTransferInitializing(source: DataSource, dataSpec: DataSpec, isNetwork: Boolean) {}
+
+            override fun onTransferStart(source: DataSource, dataSpec: DataSpec, isNetwork: Boolean) {}
+
+            override fun onBytesTransferred(source: DataSource, dataSpec: DataSpec, isNetwork: Boolean, bytesTransferred: Int) {
+                if (isNetwork) {
+                    networkBytes.addAndGet(bytesTransferred.toLong())
+                    session?.networkBytes?.addAndGet(bytesTransferred.toLong())
+                }
+            }
+
+            override fun onTransferEnd(source: DataSource, dataSpec: DataSpec, isNetwork: Boolean) {}
+        }
+        return DataSource.Factory {
+            upstreamFactory.createDataSource().apply { addTransferListener(listener) }
+        }
+    }
+
+    /**
+     * Evictor counting spans removed by delegate to make room, other removals (content removed on purpose) are not counted.
+     */
+    class CountingCacheEvictor(private val delegate: CacheEvictor) : CacheEvictor {
+        // evictions happen synchronously in the callbacks below, under the cache lock
+        private var isEvicting = false
+
+        override fun requiresCacheSpanTouches(): Boolean = delegate.requiresCacheSpanTouches()
+
+        override fun onCacheInitialized() = delegate.onCacheInitialized()
+
+        override fun onStartFile(cache: Cache, key: String, position: Long, length: Long) = evicting {
+            delegate.onStartFile(cache, key, position, length)
+        }
+
+        override fun onSpanAdded(cache: Cache, span: CacheSpan) = evicting { delegate.onSpanAdded(cache, span) }
+
+        override fun onSpanRemoved(cache: Cache, span: CacheSpan) {
+            if (isEvicting) {
+                evictions.incrementAndGet()
+                evictedBytes.addAndGet(span.length)
+            }
+            delegate.onSpanRemoved(cache, span)
+        }
+
+        override fun onSpanTouched(cache: Cache, oldSpan: CacheSpan, newSpan: CacheSpan) = evicting {
+            delegate.onSpanTouched(cache, oldSpan, newSpan)
+        }
+
+        private inline fun evicting(block: () -> Unit) {
+            isEvicting = true
+            try {
+                block()
+            } finally {
+                isEvicting = false
+            }
+        }
+    }
+
+    /**
+     * @param cache disk cache, null when caching is not enabled
+     * @param includeContents add cached bytes and spans of each cached content, can be long for large caches
+     * @return counters and cache content, with types of WritableMap
+     */
+    @JvmStatic
+    fun snapshot(cache: Cache?, includeContents: Boolean): Map<String, Any> {
+        val stats = HashMap<String, Any>()
+        stats["cacheBytesRead"] = cacheBytes.get().toDouble()
+        stats["networkBytesRead"] = networkBytes.get().toDouble()
+        stats["cacheIgnored"] = cacheIgnored.get()
+        stats["evictions"] = evictions.get()
+        stats["evictedBytes"] = evictedBytes.get().toDouble()
+        stats["cachedBytes"] = (cache?.cacheSpace ?: 0L).toDouble()
+        stats["sessions"] = sessions.values.map {
+            mapOf(
+                "id" to it.id,
+                "cacheBytesRead" to it.cacheBytes.get().toDouble(),
+                "networkBytesRead" to it.networkBytes.get().toDouble()
+            )
+        }
+        stats["memory"] = RNVMemoryCache.getStats().mapValues { it.value.toDouble() }
+        if (includeContents && cache != null) {
+            stats["contents"] = cache.keys.map { key ->
+                mapOf(
+                    "key" to key,
+                    "cachedBytes" to cache.getCachedBytes(key, 0, C.LENGTH_UNSET.toLong()).toDouble(),
+                    "contentLength" to ContentMetadata.getContentLength(cache.getContentMetadata(key)).toDouble(),
+                    "spans" to cache.getCachedSpans(key).map { span ->
+                        mapOf("position" to span.position.toDouble(), "length" to span.length.toDouble())
+                    }
+                )
+            }
+        }
+        return stats
+    }
+}
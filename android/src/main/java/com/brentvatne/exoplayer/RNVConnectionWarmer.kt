@@ -0,0 +1,147 @@
+package com.brentvatne.exoplayer
+
+import android.net.Uri
+import com.brentvatne.common.toolbox.DebugLog
+import com.google.common.util.concurrent.Futures
+import com.google.common.util.concurrent.ListenableFuture
+import com.google.common.util.concurrent.SettableFuture
+import okhttp3.Call
+import okhttp3.Callback
+import okhttp3.Connection
+import okhttp3.EventListener
+import okhttp3.HttpUrl
+import okhttp3.HttpUrl.Companion.toHttpUrlOrNull
+import okhttp3.Request
+import okhttp3.Response
+import java.io.IOException
+import java.net.InetSocketAddress
+import java.net.Proxy
+import java.util.concurrent.TimeUnit
+
+/**
+ * Opens connections to media hosts before their sources are set.
+ *
+ * A HEAD request of the uri is sent with the media client, so DNS resolution and the TCP/TLS handshake are done
+ * and the connection stays in the pool of the media client for the first manifest or segment request.
+ * Warmups are deduplicated by host while in flight or while their connection is likely alive.
+ */
+object RNVConnectionWarmer {
+    private const val TAG = "RNVConnectionWarmer"
+    private const val WARM_TIMEOUT_MS = 5000L
+
+    /**
+     * @param connectTimeMs time spent resolving and connecting, saved by the next request to the host
+     * @param alreadyConnected the media client had a connection to the host, nothing was done
+     */
+    class Result(val host: String, val connectTimeMs: Long, val alreadyConnected: Boolean)
+
+    private class Warmed(val timeMs: Long, val connectTimeMs: Long, var isUsed: Boolean = false)
+
+    // guarded by this
+    private val inFlight = HashMap<String, ListenableFuture<Result>>()
+    private val warmed = HashMap<String, Warmed>()
+    private var warmups = 0
+    private var deduplicated = 0
+    private var failures = 0
+    private var connectTimeSavedMs = 0L
+
+    /**
+     * Warm the connection to the host of uri
+     * @return future of the warmup, null when uri is not an http(s) url
+     */
+    @JvmStatic
+    fun warm(uri: Uri): ListenableFuture<Result>? {
+        val url = uri.toString().toHttpUrlOrNull() ?: return null
+        val key = keyOf(url)
+        val future = SettableFuture.create<Result>()
+        synchronized(this) {
+            inFlight[key]?.let {
+                deduplicated++
+                return it
+            }
+            val entry = warmed[key]
+            if (entry != null && System.currentTimeMillis() - entry.timeMs < RNVMediaHttpClient.getConfig().keepAliveMs) {
+                deduplicated++
+                return Futures.immediateFuture(Result(url.host, 0, true))
+            }
+            inFlight[key] = future
+            warmups++
+        }
+
+        val listener = WarmupEventListener()
+        val client = RNVMediaHttpClient.get().newBuilder()
+            .callTimeout(WARM_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .eventListener(listener)
+            .build()
+        client.newCall(Request.Builder().url(url).head().build()).enqueue(object : Callback {
+            override fun onResponse(call: Call, response: Response) {
+                response.close()
+                val result = Result(url.host, listener.connectTimeMs, !listener.hasConnected)
+                synchronized(this@RNVConnectionWarmer) {
+                    inFlight.remove(key)
+                    if (listener.hasConnected) {
+                        warmed[key] = Warmed(System.currentTimeMillis(), listener.connectTimeMs)
+                    }
+                }
+                DebugLog.d(TAG, "warmed ${url.host} in ${result.connectTimeMs}ms")
+                future.set(result)
+            }
+
+            override fun onFailure(call: Call, e: IOException) {
+                synchronized(this@RNVConnectionWarmer) {
+                    inFlight.remove(key)
+                    failures++
+                }
+                DebugLog.w(TAG, "cannot warm ${url.host}: $e")
+                future.setException(e)
+            }
+        })
+        return future
+    }
+
+    /** Called when a media call reused a pooled connection, the connect time of its warmup is then saved */
+    @JvmStatic
+    fun onConnectionReused(url: HttpUrl) {
+        synchronized(this) {
+            val entry = warmed[keyOf(url)] ?: return
+            if (!entry.isUsed) {
+                entry.isUsed = true
+                connectTimeSavedMs += entry.connectTimeMs
+            }
+        }
+    }
+
+    @JvmStatic
+    @Synchronized
+    fun getStats(): Map<String, Any> = mapOf(
+        "warmups" to warmups,
+        "warmupsDeduplicated" to deduplicated,
+        "warmupsFailed" to failures,
+        "connectTimeSavedMs" to connectTimeSavedMs.toDouble()
+    )
+
+    private fun keyOf(url: HttpUrl): String = "${url.scheme}://${url.host}:${url.port}"
+
+    /** Measures the time until the connection is acquired, resolution and handshakes included */
+    private class WarmupEventListener : EventListener() {
+        private var callStartMs = 0L
+
+        @Volatile
+        var hasConnected = false
+
+        @Volatile
+        var connectTimeMs = 0L
+
+        override fun callStart(call: Call) {
+            callStartMs = System.currentTimeMillis()
+        }
+
+        override fun connectStart(call: Call, inetSocketAddress: InetSocketAddress, proxy: Proxy) {
+            hasConnected = true
+        }
+
+        override fun connectionAcquired(call: Call, connection: Connection) {
+            connectTimeMs = System.currentTimeMillis() - callStartMs
+        }
+    }
+}
@@ -0,0 +1,515 @@
+package com.brentvatne.exoplayer
+
+import android.content.Context
+import android.net.ConnectivityManager
+import android.net.NetworkCapabilities
+import android.net.Uri
+import android.os.Handler
+import android.os.Looper
+import androidx.media3.common.C
+import androidx.media3.common.MediaItem
+import androidx.media3.common.MimeTypes
+import androidx.media3.common.StreamKey
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.common.util.Util
+import androidx.media3.datasource.DataSource
+import androidx.media3.datasource.DataSpec
+import androidx.media3.datasource.HttpDataSource
+import androidx.media3.datasource.cache.Cache
+import androidx.media3.datasource.cache.CacheDataSource
+import androidx.media3.datasource.okhttp.OkHttpDataSource
+import androidx.media3.exoplayer.DefaultRenderersFactory
+import androidx.media3.exoplayer.drm.DrmSessionManager
+import androidx.media3.exoplayer.offline.DefaultDownloadIndex
+import androidx.media3.exoplayer.offline.DefaultDownloaderFactory
+import androidx.media3.exoplayer.offline.Download
+import androidx.media3.exoplayer.offline.DownloadHelper
+import androidx.media3.exoplayer.offline.DownloadManager
+import androidx.media3.exoplayer.offline.DownloadRequest
+import androidx.media3.exoplayer.offline.DownloadService
+import androidx.media3.exoplayer.offline.Downloader
+import androidx.media3.exoplayer.offline.DownloaderFactory
+import androidx.media3.exoplayer.scheduler.Requirements
+import com.brentvatne.common.api.CacheKeyProps
+import com.brentvatne.common.api.Source
+import com.brentvatne.common.toolbox.DebugLog
+import com.brentvatne.react.BuildConfig
+import com.google.common.util.concurrent.ListenableFuture
+import org.json.JSONArray
+import org.json.JSONObject
+import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+
+/**
+ * Offline downloads, built on media3 DownloadManager and RNVDownloadService.
+ *
+ * Downloads are stored in the persistent "downloads" namespace of RNVSimpleCache, with the cache keys of their source.
+ * Adaptive streams are downloaded with a subset of their tracks: audio only, or video capped to a height.
+ * Playback of a downloaded source reads downloaded content from this cache. Only offline playback of a completed download
+ * is restricted to the downloaded tracks, see getOfflineStreamKeys.
+ * The DownloadManager lives on the main thread, commands from other threads go through the service.
+ * The download index and the downloads cache are loaded in background (see preload), the main thread never waits for them:
+ * until they are ready, sources play as if they were not downloaded.
+ * Commands are sent once the downloads cache is open, so the service starts its manager with the cache.
+ *
+ * Downloads are disabled unless the app sets RNVideo_useOfflineDownloads=true, which merges the download service,
+ * its scheduler and their permissions in the app manifest.
+ */
+@UnstableApi
+object RNVDownloadManager {
+    private const val TAG = "RNVDownloadManager"
+    const val NAMESPACE = "downloads"
+    private const val DOWNLOAD_THREADS = 2
+    private const val PROGRESS_INTERVAL_MS = 1000L
+    private const val DISABLED_MESSAGE = "offline downloads are disabled, set RNVideo_useOfflineDownloads=true in android/gradle.properties"
+
+    // keys of the download request data
+    private const val DATA_HEADERS = "headers"
+    private const val DATA_STRIP_QUERY_PARAMETERS = "stripQueryParameters"
+    private const val DATA_MEDIA_ID = "mediaId"
+    private const val DATA_TITLE = "title"
+
+    /** Tracks to download from adaptive streams */
+    class Options(val audioOnly: Boolean, val maxVideoHeight: Int)
+
+    /** Receives download changes and progress, on the main thread */
+    fun interface Listener {
+        fun onDownloadChanged(download: Download)
+    }
+
+    @JvmStatic
+    var listener: Listener? = null
+
+    private val mainHandler = Handler(Looper.getMainLooper())
+    private val mainExecutor = Executor { mainHandler.post(it) }
+    private val executor = Executors.newSingleThreadExecutor()
+    private var downloadManager: DownloadManager? = null
+
+    // usable downloads, by cache key of their uri
+    private val downloads = ConcurrentHashMap<String, Download>()
+
+    @Volatile
+    private var requestsLoaded = false
+
+    private val progressRunnable = object : Runnable {
+        override fun run() {
+            val downloads = downloadManager?.currentDownloads ?: return
+            downloads.filter { it.state == Download.STATE_DOWNLOADING }.forEach { listener?.onDownloadChanged(it) }
+            if (downloads.any { it.state == Download.STATE_DOWNLOADING }) {
+                mainHandler.postDelayed(this, PROGRESS_INTERVAL_MS)
+            }
+        }
+    }
+
+    /**
+     * Load the download index and open the downloads cache in background, to be called at app start.
+     * The cache is only opened when there are downloads.
+     */
+    @JvmStatic
+    fun preload(context: Context) {
+        if (!BuildConfig.USE_OFFLINE_DOWNLOADS) return
+        val appContext = context.applicationContext
+        executor.execute {
+            try {
+                loadRequests(appContext)
+                if (downloads.isNotEmpty()) {
+                    openCache(appContext)
+                }
+            } catch (e: Exception) {
+                DebugLog.e(TAG, "cannot load downloads: $e")
+            }
+        }
+    }
+
+    /**
+     * @return the download manager, created on first call, which must happen on the main thread.
+     * It loads its index on its own thread. Commands only start the service once the downloads cache is open,
+     * when the system restarts the service, downloaders wait for the cache on their own threads.
+     */
+    @JvmStatic
+    @Synchronized
+    fun getDownloadManager(context: Context): DownloadManager {
+        downloadManager?.let { return it }
+        val appContext = context.applicationContext
+        preload(appContext)
+        val databaseProvider = RNVSimpleCache.getDatabaseProvider(appContext)
+        val manager = DownloadManager(
+            appContext,
+            DefaultDownloadIndex(databaseProvider),
+            RequestDownloaderFactory(appContext)
+        )
+        manager.addListener(object : DownloadManager.Listener {
+            override fun onDownloadChanged(downloadManager: DownloadManager, download: Download, finalException: Exception?) {
+                updateRequest(download)
+                listener?.onDownloadChanged(download)
+                if (download.state == Download.STATE_DOWNLOADING) {
+                    mainHandler.removeCallbacks(progressRunnable)
+                    mainHandler.postDelayed(progressRunnable, PROGRESS_INTERVAL_MS)
+                }
+                finalException?.let { DebugLog.w(TAG, "download ${download.request.id} failed: $it") }
+            }
+
+            override fun onDownloadRemoved(downloadManager: DownloadManager, download: Download) {
+                downloads.remove(cacheKeyOf(download.request))
+                listener?.onDownloadChanged(download)
+            }
+        })
+        downloadManager = manager
+        return manager
+    }
+
+    /**
+     * Prepare source and add its download, tracks are selected according to options
+     * @param id download id, the uri when null
+     * @param onDone called with null once the download is added, or with the error
+     */
+    @JvmStatic
+    fun download(context: Context, id: String?, source: Source, options: Options, onDone: (Exception?) -> Unit) {
+        if (!BuildConfig.USE_OFFLINE_DOWNLOADS) return onDone(IllegalStateException(DISABLED_MESSAGE))
+        val uri = source.uri ?: return onDone(IllegalArgumentException("source has no uri"))
+        whenCacheOpen(context) {
+            try {
+                prepareDownload(context.applicationContext, id ?: uri.toString(), source, options, onDone)
+            } catch (e: Exception) {
+                onDone(e)
+            }
+        }
+    }
+
+    @JvmStatic
+    fun remove(context: Context, id: String) {
+        whenCacheOpen(context) { DownloadService.sendRemoveDownload(context, RNVDownloadService::class.java, id, false) }
+    }
+
+    @JvmStatic
+    fun pauseDownloads(context: Context) {
+        whenCacheOpen(context) { DownloadService.sendPauseDownloads(context, RNVDownloadService::class.java, false) }
+    }
+
+    @JvmStatic
+    fun resumeDownloads(context: Context) {
+        whenCacheOpen(context) { DownloadService.sendResumeDownloads(context, RNVDownloadService::class.java, false) }
+    }
+
+    /** Downloads only run when requirements are met, and resume when they are met again */
+    @JvmStatic
+    fun setRequirements(context: Context, unmeteredNetwork: Boolean, charging: Boolean) {
+        var flags = if (unmeteredNetwork) Requirements.NETWORK_UNMETERED else Requirements.NETWORK
+        if (charging) flags = flags or Requirements.DEVICE_CHARGING
+        whenCacheOpen(context) { DownloadService.sendSetRequirements(context, RNVDownloadService::class.java, Requirements(flags), false) }
+    }
+
+    @JvmStatic
+    fun setMaxParallelDownloads(context: Context, maxParallelDownloads: Int) {
+        whenCacheOpen(context) { getDownloadManager(context).maxParallelDownloads = maxParallelDownloads }
+    }
+
+    /** Run command on the main thread once the downloads cache is open, commands are dropped when downloads are disabled */
+    private fun whenCacheOpen(context: Context, command: () -> Unit) {
+        if (!BuildConfig.USE_OFFLINE_DOWNLOADS) {
+            DebugLog.w(TAG, DISABLED_MESSAGE)
+            return
+        }
+        // a cache which cannot be opened fails the downloads, see CacheWaitingDownloader
+        openCache(context).addListener(command, mainExecutor)
+    }
+
+    /** @return all downloads of the index, to be called off the main thread */
+    @JvmStatic
+    fun getDownloads(context: Context): List<Download> = readDownloads(context)
+
+    /**
+     * @return the usable download of source, whether completed or not, null if it was not downloaded
+     * or if the download index is not loaded yet.
+     * Sources are matched with their cache key, so signed uris of downloaded content still match.
+     */
+    @JvmStatic
+    fun getDownload(context: Context, source: Source): Download? {
+        val uri = source.uri ?: return null
+        if (!BuildConfig.USE_OFFLINE_DOWNLOADS) return null
+        if (!requestsLoaded) {
+            preload(context)
+            return null
+        }
+        return downloads[RNVCacheKeyFactory.forSource(source).buildCacheKey(DataSpec(uri))]
+    }
+
+    /**
+     * @return tracks to play for download: the downloaded tracks when it is completed and the device is offline,
+     * none otherwise, so that online playback keeps its track selection and only reads downloaded segments from the cache
+     */
+    @JvmStatic
+    fun getOfflineStreamKeys(context: Context, download: Download): List<StreamKey> =
+        if (download.state == Download.STATE_COMPLETED && !isOnline(context)) download.request.streamKeys else emptyList()
+
+    private fun isOnline(context: Context): Boolean {
+        val connectivityManager = context.getSystemService(Context.CONNECTIVITY_SERVICE) as ConnectivityManager? ?: return true
+        val capabilities = connectivityManager.getNetworkCapabilities(connectivityManager.activeNetwork) ?: return false
+        return capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+    }
+
+    /**
+     * @return factory reading downloaded content from the downloads cache before upstreamFactory,
+     * or from upstreamFactory while the downloads cache is opening or released
+     */
+    @JvmStatic
+    fun buildDataSourceFactory(context: Context, source: Source, upstreamFactory: DataSource.Factory): DataSource.Factory {
+        if (RNVSimpleCache.getCache(NAMESPACE) == null) {
+            openCache(context)
+        }
+        return RNVSimpleCache.switchingFactory(NAMESPACE, upstreamFactory) { buildCacheDataSourceFactory(it, source, upstreamFactory) }
+    }
+
+    private fun buildCacheDataSourceFactory(cache: Cache, source: Source, upstreamFactory: DataSource.Factory): DataSource.Factory =
+        CacheDataSource.Factory()
+            .setCache(cache)
+            .setCacheKeyFactory(RNVCacheKeyFactory.forSource(source))
+            .setCacheReadDataSourceFactory(MappedFileDataSource.cacheReadFactory())
+            .setUpstreamDataSourceFactory(upstreamFactory)
+            .setCacheWriteDataSinkFactory(null)
+
+    /** @return progress of download, with types of WritableMap */
+    @JvmStatic
+    fun toMap(download: Download): Map<String, Any?> = mapOf(
+        "id" to download.request.id,
+        "uri" to download.request.uri.toString(),
+        "title" to dataOf(download.request).optString(DATA_TITLE).ifEmpty { null },
+        "state" to stateName(download.state),
+        "percentDownloaded" to download.percentDownloaded.toDouble(),
+        "bytesDownloaded" to download.bytesDownloaded.toDouble(),
+        "contentLength" to download.contentLength.toDouble(),
+        "stopReason" to download.stopReason,
+        "failureReason" to download.failureReason
+    )
+
+    private fun prepareDownload(context: Context, id: String, source: Source, options: Options, onDone: (Exception?) -> Unit) {
+        val uri = source.uri!!
+        val httpDataSourceFactory = buildHttpDataSourceFactory(source.headers)
+        val mediaItem = MediaItem.Builder()
+            .setUri(uri)
+            .setMimeType(mimeTypeOf(uri, source.extension))
+            .build()
+        val drmSessionManager = buildDrmSessionManager(source, httpDataSourceFactory)
+        val helper = DownloadHelper.forMediaItem(
+            mediaItem,
+            DownloadHelper.getDefaultTrackSelectorParameters(context),
+            DefaultRenderersFactory(context),
+            httpDataSourceFactory,
+            drmSessionManager
+        )
+        helper.prepare(object : DownloadHelper.Callback {
+            override fun onPrepared(helper: DownloadHelper) {
+                try {
+                    val parameters = DownloadHelper.getDefaultTrackSelectorParameters(context).buildUpon()
+                    if (options.audioOnly) {
+                        parameters.setTrackTypeDisabled(C.TRACK_TYPE_VIDEO, true)
+                    } else if (options.maxVideoHeight > 0) {
+                        parameters.setMaxVideoSize(Int.MAX_VALUE, options.maxVideoHeight)
+                    }
+                    for (periodIndex in 0 until helper.periodCount) {
+                        helper.clearTrackSelections(periodIndex)
+                        helper.addTrackSelection(periodIndex, parameters.build())
+                    }
+                    val request = helper.getDownloadRequest(id, buildData(source))
+                    DownloadService.sendAddDownload(context, RNVDownloadService::class.java, request, false)
+                    DebugLog.d(TAG, "added download $id with ${request.streamKeys.size} stream keys")
+                    onDone(null)
+                } catch (e: Exception) {
+                    onDone(e)
+                } finally {
+                    helper.release()
+                    drmSessionManager?.release()
+                }
+            }
+
+            override fun onPrepareError(helper: DownloadHelper, e: IOException) {
+                helper.release()
+                drmSessionManager?.release()
+                onDone(e)
+            }
+        })
+    }
+
+    /** Open the downloads cache in background, without size limit since downloads are only removed on request */
+    private fun openCache(context: Context): ListenableFuture<RNVSimpleCache.Namespace> =
+        RNVSimpleCache.openNamespaceAsync(context, NAMESPACE, Long.MAX_VALUE, true)
+
+    private fun buildDrmSessionManager(source: Source, httpDataSourceFactory: HttpDataSource.Factory): DrmSessionManager? {
+        val drmProps = source.drmProps ?: return null
+        val uuid = drmProps.drmType?.let { Util.getDrmUuid(it) } ?: return null
+        return DRMManager(httpDataSourceFactory).buildDrmSessionManager(uuid, drmProps)?.also { it.prepare() }
+    }
+
+    private fun mimeTypeOf(uri: Uri, extension: String?): String? {
+        val contentType = if (extension.isNullOrEmpty()) Util.inferContentType(uri) else Util.inferContentTypeForExtension(extension)
+        return when (contentType) {
+            C.CONTENT_TYPE_DASH -> MimeTypes.APPLICATION_MPD
+            C.CONTENT_TYPE_HLS -> MimeTypes.APPLICATION_M3U8
+            C.CONTENT_TYPE_SS -> MimeTypes.APPLICATION_SS
+            else -> null
+        }
+    }
+
+    private fun buildHttpDataSourceFactory(headers: Map<String, String>): HttpDataSource.Factory =
+        // the download service can run without react context, the cookie jar of DataSourceUtil is not available
+        OkHttpDataSource.Factory(RNVMediaHttpClient.get())
+            .setDefaultRequestProperties(headers)
+
+    /** request data keeps what is needed to download without the source: headers and cache key rules */
+    private fun buildData(source: Source): ByteArray {
+        val data = JSONObject()
+        data.put(DATA_HEADERS, JSONObject(source.headers.toMap()))
+        source.cacheKeyProps?.let { props ->
+            data.put(DATA_STRIP_QUERY_PARAMETERS, JSONArray(props.stripQueryParameters))
+            source.metadata?.id?.takeIf { props.useMediaId && it >= 0 }?.let { data.put(DATA_MEDIA_ID, it) }
+        }
+        source.metadata?.title?.let { data.put(DATA_TITLE, it) }
+        return data.toString().toByteArray(Charsets.UTF_8)
+    }
+
+    private fun dataOf(request: DownloadRequest): JSONObject =
+        try {
+            JSONObject(String(request.data, Charsets.UTF_8))
+        } catch (e: Exception) {
+            JSONObject()
+        }
+
+    /** @return a source with the uri, headers and cache key rules of request */
+    private fun sourceOf(request: DownloadRequest): Source {
+        val data = dataOf(request)
+        val source = Source()
+        source.uri = request.uri
+        data.optJSONObject(DATA_HEADERS)?.let { headers ->
+            headers.keys().forEach { source.headers[it] = headers.getString(it) }
+        }
+        data.optJSONArray(DATA_STRIP_QUERY_PARAMETERS)?.let { parameters ->
+            val mediaId = data.optInt(DATA_MEDIA_ID, -1)
+            source.cacheKeyProps = CacheKeyProps((0 until parameters.length()).map { parameters.getString(it) }, mediaId >= 0)
+            if (mediaId >= 0) {
+                source.metadata = Source.Metadata().apply { id = mediaId }
+            }
+        }
+        return source
+    }
+
+    private fun cacheKeyOf(request: DownloadRequest): String =
+        RNVCacheKeyFactory.forSource(sourceOf(request)).buildCacheKey(DataSpec(request.uri))
+
+    private fun updateRequest(download: Download) {
+        val key = cacheKeyOf(download.request)
+        if (download.state == Download.STATE_FAILED || download.state == Download.STATE_REMOVING) {
+            downloads.remove(key)
+        } else {
+            downloads[key] = download
+        }
+    }
+
+    /**
+     * read usable downloads from the index once, off the main thread.
+     * Later changes come from the download manager listener, they are not overwritten by the index.
+     */
+    private fun loadRequests(context: Context) {
+        if (requestsLoaded) return
+        synchronized(downloads) {
+            if (requestsLoaded) return
+            readDownloads(context).forEach { download ->
+                if (download.state != Download.STATE_FAILED && download.state != Download.STATE_REMOVING) {
+                    downloads.putIfAbsent(cacheKeyOf(download.request), download)
+                }
+            }
+            requestsLoaded = true
+        }
+    }
+
+    private fun readDownloads(context: Context): List<Download> {
+        val downloads = ArrayList<Download>()
+        DefaultDownloadIndex(RNVSimpleCache.getDatabaseProvider(context)).getDownloads().use { cursor ->
+            while (cursor.moveToNext()) {
+                downloads.add(cursor.download)
+            }
+        }
+        return downloads
+    }
+
+    private fun stateName(state: Int): String =
+        when (state) {
+            Download.STATE_QUEUED -> "queued"
+            Download.STATE_STOPPED -> "stopped"
+            Download.STATE_DOWNLOADING -> "downloading"
+            Download.STATE_COMPLETED -> "completed"
+            Download.STATE_FAILED -> "failed"
+            Download.STATE_REMOVING -> "removing"
+            Download.STATE_RESTARTING -> "restarting"
+            else -> "unknown"
+        }
+
+    /**
+     * Builds the downloader of each request with its own headers and cache key rules.
+     * Downloaders are created on the thread of the download manager, which never waits for the downloads cache:
+     * when it is not open yet, the downloader waits for it on its own thread.
+     */
+    private class RequestDownloaderFactory(private val context: Context) : DownloaderFactory {
+        private val executor = Executors.newFixedThreadPool(DOWNLOAD_THREADS)
+
+        override fun createDownloader(request: DownloadRequest): Downloader {
+            RNVSimpleCache.getCache(NAMESPACE)?.let { return createDownloader(request, it) }
+            return CacheWaitingDownloader(openCache(context)) { createDownloader(request, it) }
+        }
+
+        private fun createDownloader(request: DownloadRequest, cache: Cache): Downloader {
+            val source = sourceOf(request)
+            val cacheDataSourceFactory = CacheDataSource.Factory()
+                .setCache(cache)
+                .setCacheKeyFactory(RNVCacheKeyFactory.forSource(source))
+                .setUpstreamDataSourceFactory(buildHttpDataSourceFactory(source.headers))
+            return DefaultDownloaderFactory(cacheDataSourceFactory, executor).createDownloader(request)
+        }
+    }
+
+    /**
+     * Downloader waiting for the downloads cache on the download thread, then delegating to the downloader built with it.
+     * A cache which cannot be opened fails the download.
+     */
+    private class CacheWaitingDownloader(
+        private val cache: ListenableFuture<RNVSimpleCache.Namespace>,
+        private val create: (Cache) -> Downloader
+    ) : Downloader {
+        @Volatile
+        private var delegate: Downloader? = null
+
+        @Volatile
+        private var isCanceled = false
+
+        override fun download(progressListener: Downloader.ProgressListener?) {
+            awaitDelegate().download(progressListener)
+        }
+
+        override fun cancel() {
+            // the download thread is also interrupted, which ends the wait for the cache
+            isCanceled = true
+            delegate?.cancel()
+        }
+
+        override fun remove() {
+            awaitDelegate().remove()
+        }
+
+        private fun awaitDelegate(): Downloader {
+            delegate?.let { return it }
+            val namespace = try {
+                cache.get()
+            } catch (e: ExecutionException) {
+                throw IOException("cannot open downloads cache", e.cause)
+            }
+            val downloader = create(namespace.cache)
+            delegate = downloader
+            if (isCanceled) {
+                downloader.cancel()
+            }
+            return downloader
+        }
+    }
+}
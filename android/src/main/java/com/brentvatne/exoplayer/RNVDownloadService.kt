@@ -0,0 +1,45 @@
+package com.brentvatne.exoplayer
+
+import android.app.Notification
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.exoplayer.offline.Download
+import androidx.media3.exoplayer.offline.DownloadManager
+import androidx.media3.exoplayer.offline.DownloadNotificationHelper
+import androidx.media3.exoplayer.offline.DownloadService
+import androidx.media3.exoplayer.scheduler.PlatformScheduler
+import androidx.media3.exoplayer.scheduler.Scheduler
+
+/**
+ * Foreground service running the downloads of RNVDownloadManager, with a progress notification.
+ * Downloads waiting for their requirements (unmetered network, charging) are restarted by the platform scheduler.
+ */
+@UnstableApi
+class RNVDownloadService : DownloadService(
+    FOREGROUND_NOTIFICATION_ID,
+    DEFAULT_FOREGROUND_NOTIFICATION_UPDATE_INTERVAL,
+    NOTIFICATION_CHANNEL_ID,
+    androidx.media3.exoplayer.R.string.exo_download_notification_channel_name,
+    0
+) {
+    private val notificationHelper by lazy { DownloadNotificationHelper(this, NOTIFICATION_CHANNEL_ID) }
+
+    override fun getDownloadManager(): DownloadManager = RNVDownloadManager.getDownloadManager(this)
+
+    override fun getScheduler(): Scheduler = PlatformScheduler(this, JOB_ID)
+
+    override fun getForegroundNotification(downloads: MutableList<Download>, notMetRequirements: Int): Notification =
+        notificationHelper.buildProgressNotification(
+            this,
+            android.R.drawable.stat_sys_download,
+            null,
+            null,
+            downloads,
+            notMetRequirements
+        )
+
+    companion object {
+        private const val FOREGROUND_NOTIFICATION_ID = 0x524e56
+        private const val NOTIFICATION_CHANNEL_ID = "RNV_DOWNLOADS"
+        private const val JOB_ID = 0x524e57
+    }
+}
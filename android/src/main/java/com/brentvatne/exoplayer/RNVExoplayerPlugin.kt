@@ -2,6 +2,7 @@ package com.brentvatne.exoplayer
 
 import androidx.media3.common.MediaItem
 import androidx.media3.datasource.DataSource
+import androidx.media3.datasource.cache.CacheKeyFactory
 import androidx.media3.exoplayer.ExoPlayer
 import androidx.media3.exoplayer.drm.DrmSessionManager
 import androidx.media3.exoplayer.source.MediaSource
@@ -66,6 +67,15 @@ interface RNVExoplayerPlugin : RNVPlugin {
      */
     fun shouldDisableCache(source: Source): Boolean = false
 
+    /**
+     * Optional function that allows the plugin to provide the cache keys of a source,
+     * for example to identify media by an id when urls are signed.
+     * @param source The video source being loaded.
+     * @param cacheKeyFactory The cache key factory built from the source cache key rules.
+     * @return A custom [CacheKeyFactory] if override is needed, or null to use default.
+     */
+    fun overrideCacheKeyFactory(source: Source, cacheKeyFactory: CacheKeyFactory): CacheKeyFactory? = null
+
     /**
      * Function called when a new player is created
      * @param id: a random string identifying the player
@@ -0,0 +1,168 @@
+package com.brentvatne.exoplayer
+
+import com.brentvatne.common.toolbox.DebugLog
+import com.facebook.react.modules.network.OkHttpClientProvider
+import okhttp3.Call
+import okhttp3.Connection
+import okhttp3.ConnectionPool
+import okhttp3.Dispatcher
+import okhttp3.EventListener
+import okhttp3.OkHttpClient
+import okhttp3.Protocol
+import java.io.IOException
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.Proxy
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * OkHttp client of media requests (manifests, segments, progressive content and downloads).
+ *
+ * It is derived from the RN client, so it shares its cookie jar and interceptors, but has its own
+ * dispatcher and connection pool: segment fetching does not compete with JS fetch for request slots,
+ * and keeps more connections alive to media hosts. Counters of its calls are exposed by getStats.
+ */
+object RNVMediaHttpClient {
+    private const val TAG = "RNVMediaHttpClient"
+
+    data class Config(
+        val maxRequests: Int = 64,
+        val maxRequestsPerHost: Int = 16,
+        val maxIdleConnections: Int = 16,
+        val keepAliveMs: Long = 5 * 60 * 1000L,
+        val connectTimeoutMs: Long = 8000,
+        val readTimeoutMs: Long = 10000,
+        val writeTimeoutMs: Long = 10000,
+        /** negotiate HTTP/2 when the server supports it, segments are then multiplexed on one connection per host */
+        val preferHttp2: Boolean = true
+    )
+
+    private var config = Config()
+    private var baseClient: OkHttpClient? = null
+    private var client: OkHttpClient? = null
+
+    private val calls = AtomicLong()
+    private val failedCalls = AtomicLong()
+    private val connectionsOpened = AtomicLong()
+    private val connectionsReused = AtomicLong()
+    private val http2Connections = AtomicLong()
+    private val dnsTimeMs = AtomicLong()
+    private val connectTimeMs = AtomicLong()
+    private val timeToFirstByteMs = AtomicLong()
+    private val bytesReceived = AtomicLong()
+
+    /** @return the media client, rebuilt when the config or the RN client changed */
+    @JvmStatic
+    @Synchronized
+    fun get(): OkHttpClient {
+        val rnClient = OkHttpClientProvider.getOkHttpClient()
+        client?.takeIf { rnClient === baseClient }?.let { return it }
+        return build(rnClient).also {
+            baseClient = rnClient
+            client = it
+        }
+    }
+
+    /** Apply config to the next media requests, running calls keep the previous client */
+    @JvmStatic
+    @Synchronized
+    fun configure(newConfig: Config) {
+        if (newConfig == config) return
+        config = newConfig
+        client = null
+    }
+
+    @JvmStatic
+    @Synchronized
+    fun getConfig(): Config = config
+
+    private fun build(rnClient: OkHttpClient): OkHttpClient {
+        val dispatcher = Dispatcher().apply {
+            maxRequests = config.maxRequests
+            maxRequestsPerHost = config.maxRequestsPerHost
+        }
+        DebugLog.d(TAG, "building media client: $config")
+        return rnClient.newBuilder()
+            .dispatcher(dispatcher)
+            .connectionPool(ConnectionPool(config.maxIdleConnections, config.keepAliveMs, TimeUnit.MILLISECONDS))
+            .protocols(if (config.preferHttp2) listOf(Protocol.HTTP_2, Protocol.HTTP_1_1) else listOf(Protocol.HTTP_1_1))
+            .connectTimeout(config.connectTimeoutMs, TimeUnit.MILLISECONDS)
+            .readTimeout(config.readTimeoutMs, TimeUnit.MILLISECONDS)
+            .writeTimeout(config.writeTimeoutMs, TimeUnit.MILLISECONDS)
+            .eventListenerFactory { MetricsEventListener() }
+            .build()
+    }
+
+    /** @return counters of media calls since app start, durations are sums in milliseconds */
+    @JvmStatic
+    fun getStats(): Map<String, Any> {
+        val pool = synchronized(this) { client?.connectionPool }
+        return mapOf(
+            "calls" to calls.get().toDouble(),
+            "failedCalls" to failedCalls.get().toDouble(),
+            "connectionsOpened" to connectionsOpened.get().toDouble(),
+            "connectionsReused" to connectionsReused.get().toDouble(),
+            "http2Connections" to http2Connections.get().toDouble(),
+            "dnsTimeMs" to dnsTimeMs.get().toDouble(),
+            "connectTimeMs" to connectTimeMs.get().toDouble(),
+            "timeToFirstByteMs" to timeToFirstByteMs.get().toDouble(),
+            "bytesReceived" to bytesReceived.get().toDouble(),
+            "idleConnections" to (pool?.idleConnectionCount() ?: 0),
+            "connections" to (pool?.connectionCount() ?: 0)
+        )
+    }
+
+    /** Listener of one call */
+    private class MetricsEventListener : EventListener() {
+        private var callStartMs = 0L
+        private var dnsStartMs = 0L
+        private var connectStartMs = 0L
+        private var hasConnected = false
+
+        override fun callStart(call: Call) {
+            calls.incrementAndGet()
+            callStartMs = System.currentTimeMillis()
+        }
+
+        override fun dnsStart(call: Call, domainName: String) {
+            dnsStartMs = System.currentTimeMillis()
+        }
+
+        override fun dnsEnd(call: Call, domainName: String, inetAddressList: List<InetAddress>) {
+            dnsTimeMs.addAndGet(System.currentTimeMillis() - dnsStartMs)
+        }
+
+        override fun connectStart(call: Call, inetSocketAddress: InetSocketAddress, proxy: Proxy) {
+            connectStartMs = System.currentTimeMillis()
+        }
+
+        override fun connectEnd(call: Call, inetSocketAddress: InetSocketAddress, proxy: Proxy, protocol: Protocol?) {
+            hasConnected = true
+            connectionsOpened.incrementAndGet()
+            connectTimeMs.addAndGet(System.currentTimeMillis() - connectStartMs)
+            if (protocol == Protocol.HTTP_2) {
+                http2Connections.incrementAndGet()
+            }
+        }
+
+        override fun connectionAcquired(call: Call, connection: Connection) {
+            if (!hasConnected) {
+                connectionsReused.incrementAndGet()
+                RNVConnectionWarmer.onConnectionReused(call.request().url)
+            }
+        }
+
+        override fun responseHeadersStart(call: Call) {
+            timeToFirstByteMs.addAndGet(System.currentTimeMillis() - callStartMs)
+        }
+
+        override fun responseBodyEnd(call: Call, byteCount: Long) {
+            bytesReceived.addAndGet(byteCount)
+        }
+
+        override fun callFailed(call: Call, ioe: IOException) {
+            failedCalls.incrementAndGet()
+        }
+    }
+}
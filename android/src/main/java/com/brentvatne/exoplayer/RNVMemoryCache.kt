@@ -0,0 +1,154 @@
+package com.brentvatne.exoplayer
+
+import android.content.ComponentCallbacks2
+import android.content.Context
+import android.content.res.Configuration
+import android.util.LruCache
+import androidx.media3.datasource.DataSpec
+import com.brentvatne.common.toolbox.DebugLog
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * In-memory tier in front of the data sources of a player, see RNVMemoryCacheDataSource.
+ *
+ * Holds small immutable objects: VOD manifests and playlists, init segments, short segments and subtitles.
+ * Repeated reads (seek back, re-prepare after an error, quality switches) are then served from RAM
+ * instead of the network or the disk cache. Entries are bounded in bytes and evicted least recently used first.
+ */
+object RNVMemoryCache {
+    private const val TAG = "RNVMemoryCache"
+
+    /** Objects bigger than this are never kept in memory */
+    const val MAX_OBJECT_SIZE = 512 * 1024
+    private const val MAX_CACHE_SIZE = 16 * 1024 * 1024
+
+    // the MPD element of DASH manifests is expected in this first bytes, after the xml declaration and comments
+    private const val MANIFEST_HEADER_SIZE = 4 * 1024
+
+    private val HLS_HEADER = "#EXTM3U".toByteArray(Charsets.ISO_8859_1)
+    private val HLS_STREAM_INF = "#EXT-X-STREAM-INF".toByteArray(Charsets.ISO_8859_1)
+    private val HLS_EXTINF = "#EXTINF".toByteArray(Charsets.ISO_8859_1)
+    private val HLS_ENDLIST = "#EXT-X-ENDLIST".toByteArray(Charsets.ISO_8859_1)
+    private val HLS_VOD = "#EXT-X-PLAYLIST-TYPE:VOD".toByteArray(Charsets.ISO_8859_1)
+    private val DASH_MPD = "<MPD".toByteArray(Charsets.ISO_8859_1)
+    private val DASH_DYNAMIC = "type=\"dynamic\"".toByteArray(Charsets.ISO_8859_1)
+
+    private var memoryCallbacksRegistered = false
+    private val hitBytes = AtomicLong()
+    private val storedBytes = AtomicLong()
+    private val evictedBytes = AtomicLong()
+
+    private val cache = object : LruCache<String, ByteArray>(
+        minOf(MAX_CACHE_SIZE.toLong(), Runtime.getRuntime().maxMemory() / 32).toInt()
+    ) {
+        override fun sizeOf(key: String, value: ByteArray): Int = value.size
+
+        override fun entryRemoved(evicted: Boolean, key: String, oldValue: ByteArray, newValue: ByteArray?) {
+            if (evicted) {
+                evictedBytes.addAndGet(oldValue.size.toLong())
+            }
+        }
+    }
+
+    /** @return key of the range of dataSpec in the resource identified by cacheKey */
+    @JvmStatic
+    fun keyOf(cacheKey: String, dataSpec: DataSpec): String = "$cacheKey|${dataSpec.position}|${dataSpec.length}"
+
+    @JvmStatic
+    fun get(key: String): ByteArray? = cache.get(key)?.also { hitBytes.addAndGet(it.size.toLong()) }
+
+    /**
+     * Keep data of a fully read object, unless it is a live manifest which will change on next refresh
+     * @param isManifest the object may be a manifest (see RNVMemoryCacheDataSource), only manifests are inspected
+     */
+    @JvmStatic
+    fun put(key: String, data: ByteArray, isManifest: Boolean) {
+        if (data.isEmpty() || data.size > MAX_OBJECT_SIZE || (isManifest && isLiveManifest(data))) return
+        cache.put(key, data)
+        storedBytes.addAndGet(data.size.toLong())
+    }
+
+    /** Drop all entries, to be called on memory pressure */
+    @JvmStatic
+    fun clear() {
+        DebugLog.d(TAG, "clearing ${cache.size()} bytes")
+        cache.evictAll()
+    }
+
+    /** Clear the cache when the system runs low on memory */
+    @JvmStatic
+    fun registerMemoryCallbacks(context: Context) {
+        synchronized(this) {
+            if (memoryCallbacksRegistered) return
+            memoryCallbacksRegistered = true
+        }
+        context.applicationContext.registerComponentCallbacks(object : ComponentCallbacks2 {
+            override fun onTrimMemory(level: Int) {
+                if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+                    clear()
+                }
+            }
+
+            override fun onConfigurationChanged(newConfig: Configuration) {}
+
+            @Deprecated("Deprecated in Java")
+            override fun onLowMemory() {
+                clear()
+            }
+        })
+    }
+
+    /** @return memory tier counters */
+    @JvmStatic
+    fun getStats(): Map<String, Long> = mapOf(
+        "size" to cache.size().toLong(),
+        "maxSize" to cache.maxSize().toLong(),
+        "hits" to cache.hitCount().toLong(),
+        "misses" to cache.missCount().toLong(),
+        "hitBytes" to hitBytes.get(),
+        "storedBytes" to storedBytes.get(),
+        "evictions" to cache.evictionCount().toLong(),
+        "evictedBytes" to evictedBytes.get()
+    )
+
+    /**
+     * HLS media playlists without end tag and dynamic DASH manifests are refreshed by the player,
+     * they must always be read again from upstream.
+     * Bytes are searched in place, nothing is decoded.
+     */
+    private fun isLiveManifest(data: ByteArray): Boolean {
+        val start = skipWhitespace(data)
+        if (startsWith(data, start, HLS_HEADER)) {
+            val isMultivariant = contains(data, HLS_STREAM_INF, data.size) && !contains(data, HLS_EXTINF, data.size)
+            return !isMultivariant && !contains(data, HLS_ENDLIST, data.size) && !contains(data, HLS_VOD, data.size)
+        }
+        val headerEnd = minOf(data.size, MANIFEST_HEADER_SIZE)
+        if (start < data.size && data[start] == '<'.code.toByte() && contains(data, DASH_MPD, headerEnd)) {
+            return contains(data, DASH_DYNAMIC, headerEnd)
+        }
+        return false
+    }
+
+    /** @return index of the first byte after the UTF-8 BOM and whitespace */
+    private fun skipWhitespace(data: ByteArray): Int {
+        var index = if (data.size >= 3 && data[0] == 0xEF.toByte() && data[1] == 0xBB.toByte() && data[2] == 0xBF.toByte()) 3 else 0
+        while (index < data.size && data[index].toInt().toChar().isWhitespace()) index++
+        return index
+    }
+
+    private fun startsWith(data: ByteArray, start: Int, prefix: ByteArray): Boolean {
+        if (data.size - start < prefix.size) return false
+        for (i in prefix.indices) {
+            if (data[start + i] != prefix[i]) return false
+        }
+        return true
+    }
+
+    /** @return true if pattern is found in data before end */
+    private fun contains(data: ByteArray, pattern: ByteArray, end: Int): Boolean {
+        for (start in 0..end - pattern.size) {
+            if (startsWith(data, start, pattern)) return true
+        }
+        return false
+    }
+}
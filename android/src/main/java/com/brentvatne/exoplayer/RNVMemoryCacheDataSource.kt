@@ -0,0 +1,135 @@
+package com.brentvatne.exoplayer
+
+import android.net.Uri
+import androidx.media3.common.C
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.datasource.DataSource
+import androidx.media3.datasource.DataSpec
+import androidx.media3.datasource.TransferListener
+import androidx.media3.datasource.cache.CacheKeyFactory
+import java.io.ByteArrayOutputStream
+
+/**
+ * DataSource reading small http objects from RNVMemoryCache, and filling it with objects fully read from upstream.
+ * Upstream is usually the disk cache data source, or the network one when the source is not cached.
+ * Reads served from memory are not reported to transfer listeners, so they don't skew bandwidth estimates.
+ */
+@UnstableApi
+class RNVMemoryCacheDataSource(private val upstream: DataSource, private val cacheKeyFactory: CacheKeyFactory) : DataSource {
+
+    class Factory(private val upstreamFactory: DataSource.Factory, private val cacheKeyFactory: CacheKeyFactory) : DataSource.Factory {
+        override fun createDataSource(): DataSource = RNVMemoryCacheDataSource(upstreamFactory.createDataSource(), cacheKeyFactory)
+    }
+
+    private var uri: Uri? = null
+
+    // object served from memory
+    private var data: ByteArray? = null
+    private var readPosition = 0
+
+    // object read from upstream, kept while it may still be stored
+    private var key: String? = null
+    private var buffer: ByteArrayOutputStream? = null
+    private var expectedLength = C.LENGTH_UNSET.toLong()
+    private var isManifest = false
+    private var isEndOfInput = false
+    private var isUpstreamOpen = false
+
+    override fun addTransferListener(transferListener: TransferListener) {
+        upstream.addTransferListener(transferListener)
+    }
+
+    override fun open(dataSpec: DataSpec): Long {
+        uri = dataSpec.uri
+        val cacheKey = if (isCacheable(dataSpec)) RNVMemoryCache.keyOf(cacheKeyFactory.buildCacheKey(dataSpec), dataSpec) else null
+        val cached = cacheKey?.let { RNVMemoryCache.get(it) }
+        if (cached != null) {
+            data = cached
+            readPosition = 0
+            return cached.size.toLong()
+        }
+        isUpstreamOpen = true
+        val length = upstream.open(dataSpec)
+        if (cacheKey != null && (length == C.LENGTH_UNSET.toLong() || length <= RNVMemoryCache.MAX_OBJECT_SIZE)) {
+            key = cacheKey
+            expectedLength = length
+            isManifest = isManifest(dataSpec)
+            buffer = ByteArrayOutputStream(if (length > 0) length.toInt() else INITIAL_BUFFER_SIZE)
+        }
+        return length
+    }
+
+    override fun read(target: ByteArray, offset: Int, length: Int): Int {
+        if (length == 0) return 0
+        data?.let {
+            if (readPosition >= it.size) return C.RESULT_END_OF_INPUT
+            val count = minOf(length, it.size - readPosition)
+            System.arraycopy(it, readPosition, target, offset, count)
+            readPosition += count
+            return count
+        }
+        val count = upstream.read(target, offset, length)
+        buffer?.let {
+            if (count == C.RESULT_END_OF_INPUT) {
+                isEndOfInput = true
+            } else if (it.size() + count > RNVMemoryCache.MAX_OBJECT_SIZE) {
+                // unknown length turned out to be too big
+                buffer = null
+            } else {
+                it.write(target, offset, count)
+            }
+        }
+        return count
+    }
+
+    override fun getUri(): Uri? = if (data != null) uri else upstream.uri
+
+    override fun getResponseHeaders(): Map<String, List<String>> = if (data != null) emptyMap() else upstream.responseHeaders
+
+    override fun close() {
+        val completeBuffer = buffer?.takeIf { isEndOfInput || it.size().toLong() == expectedLength }
+        if (completeBuffer != null) {
+            RNVMemoryCache.put(key!!, completeBuffer.toByteArray(), isManifest)
+        }
+        data = null
+        key = null
+        buffer = null
+        expectedLength = C.LENGTH_UNSET.toLong()
+        isManifest = false
+        isEndOfInput = false
+        if (isUpstreamOpen) {
+            isUpstreamOpen = false
+            upstream.close()
+        }
+    }
+
+    private fun isCacheable(dataSpec: DataSpec): Boolean {
+        val scheme = dataSpec.uri.scheme
+        return dataSpec.httpMethod == DataSpec.HTTP_METHOD_GET &&
+            (scheme == "http" || scheme == "https") &&
+            (dataSpec.length == C.LENGTH_UNSET.toLong() || dataSpec.length <= RNVMemoryCache.MAX_OBJECT_SIZE)
+    }
+
+    /** @return true if the object may be a HLS playlist or a DASH manifest, by its extension or its content type */
+    private fun isManifest(dataSpec: DataSpec): Boolean {
+        if (dataSpec.position != 0L) return false
+        val path = dataSpec.uri.lastPathSegment
+        if (path != null && MANIFEST_EXTENSIONS.any { path.endsWith(it, ignoreCase = true) }) return true
+        val contentType = upstream.responseHeaders.entries
+            .firstOrNull { it.key.equals("Content-Type", ignoreCase = true) }
+            ?.value?.firstOrNull() ?: return false
+        return MANIFEST_CONTENT_TYPES.any { contentType.startsWith(it, ignoreCase = true) }
+    }
+
+    companion object {
+        private const val INITIAL_BUFFER_SIZE = 16 * 1024
+        private val MANIFEST_EXTENSIONS = arrayOf(".m3u8", ".m3u", ".mpd")
+        private val MANIFEST_CONTENT_TYPES = arrayOf(
+            "application/vnd.apple.mpegurl",
+            "application/x-mpegurl",
+            "audio/mpegurl",
+            "audio/x-mpegurl",
+            "application/dash+xml"
+        )
+    }
+}
@@ -1,33 +1,254 @@
 package com.brentvatne.exoplayer
 
 import android.content.Context
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.database.DatabaseProvider
 import androidx.media3.database.StandaloneDatabaseProvider
 import androidx.media3.datasource.DataSource
-import androidx.media3.datasource.HttpDataSource
 import androidx.media3.datasource.cache.CacheDataSource
-import androidx.media3.datasource.cache.LeastRecentlyUsedCacheEvictor
+import androidx.media3.datasource.cache.CacheKeyFactory
 import androidx.media3.datasource.cache.SimpleCache
+import com.brentvatne.common.toolbox.DebugLog
+import com.google.common.util.concurrent.Futures
+import com.google.common.util.concurrent.ListenableFuture
+import com.google.common.util.concurrent.MoreExecutors
 import java.io.File
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
 
+/**
+ * Manager of the disk caches.
+ *
+ * Caches are organized in namespaces, each with its own directory, size and evictor.
+ * Evictors keep pinned content and evict other content by weighted LRU, see RNVCachePins.
+ * The default namespace is the streaming cache of players (cacheSizeMB of bufferConfig),
+ * other namespaces can be larger and persistent, like the one of offline content.
+ * Resize, clear, content removal and release run on a background thread, they never block the caller.
+ *
+ * Opening a cache loads its index, which takes hundreds of milliseconds for large caches.
+ * Namespaces are only opened in background, each on its own thread so that one does not wait for the index of another.
+ * The streaming cache is opened at app start with its last size (see preload),
+ * and players read from network until it is ready, see getCacheFactory.
+ */
+@UnstableApi
 object RNVSimpleCache {
-    // TODO: when to release? how to check if cache is released?
-    private var simpleCache: SimpleCache? = null
+    private const val TAG = "RNVSimpleCache"
+    const val DEFAULT_NAMESPACE = "default"
+    private const val DEFAULT_DIRECTORY = "RNVCache"
+    private const val PREFERENCES_NAME = "RNVSimpleCache"
+    private const val PREF_DEFAULT_SIZE_MB = "defaultSizeMB"
 
+    class Namespace internal constructor(val name: String, val cache: SimpleCache, val evictor: ResizableCacheEvictor)
+
+    private val namespaces = HashMap<String, Namespace>()
+    private val opening = HashMap<String, ListenableFuture<Namespace>>()
+    private val initExecutor = Executors.newSingleThreadExecutor()
+
+    // opens namespaces, one thread per namespace being opened
+    private val openExecutor = MoreExecutors.listeningDecorator(Executors.newCachedThreadPool())
+    private val releasing = HashMap<String, Future<*>>()
+    private val executor = MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor())
+    private var databaseProvider: DatabaseProvider? = null
+
+    /**
+     * Configure the default namespace without blocking, players read from network until it is open.
+     * A size change of an existing cache is applied in background.
+     */
     fun setSimpleCache(context: Context, cacheSize: Int) {
-        if (simpleCache != null || cacheSize <= 0) return
-        simpleCache = SimpleCache(
-            File(context.cacheDir, "RNVCache"),
-            LeastRecentlyUsedCacheEvictor(
-                cacheSize.toLong() * 1024 * 1024
-            ),
-            StandaloneDatabaseProvider(context)
-        )
-    }
-
-    fun getCacheFactory(factory: HttpDataSource.Factory): DataSource.Factory {
-        if (simpleCache == null) return factory
-        return CacheDataSource.Factory()
-            .setCache(simpleCache!!)
-            .setUpstreamDataSourceFactory(factory)
+        if (cacheSize <= 0) return
+        val appContext = context.applicationContext
+        openNamespaceAsync(appContext, DEFAULT_NAMESPACE, cacheSize.toLong() * 1024 * 1024, false)
+        initExecutor.execute {
+            val preferences = appContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE)
+            if (preferences.getInt(PREF_DEFAULT_SIZE_MB, 0) != cacheSize) {
+                preferences.edit().putInt(PREF_DEFAULT_SIZE_MB, cacheSize).apply()
+            }
+        }
+    }
+
+    /** Open the default namespace in background with the size of the last session, to be called at app start */
+    @JvmStatic
+    fun preload(context: Context) {
+        val appContext = context.applicationContext
+        initExecutor.execute {
+            val cacheSize = appContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE).getInt(PREF_DEFAULT_SIZE_MB, 0)
+            if (cacheSize > 0) {
+                openNamespaceAsync(appContext, DEFAULT_NAMESPACE, cacheSize.toLong() * 1024 * 1024, false)
+            }
+        }
+    }
+
+    /**
+     * Open the cache of namespace name in background, or resize it if it is already open
+     * @param persistent store the cache in app files instead of the cache directory, so the system never clears it
+     * @return future completed once the cache index is loaded
+     */
+    @JvmStatic
+    fun openNamespaceAsync(context: Context, name: String, maxBytes: Long, persistent: Boolean): ListenableFuture<Namespace> {
+        synchronized(this) {
+            namespaces[name]?.let {
+                resize(name, maxBytes)
+                return Futures.immediateFuture(it)
+            }
+            opening[name]?.let {
+                // apply the latest size once open
+                it.addListener({ resize(name, maxBytes) }, MoreExecutors.directExecutor())
+                return it
+            }
+            val appContext = context.applicationContext
+            val future = openExecutor.submit(Callable { createNamespace(appContext, name, maxBytes, persistent) })
+            opening[name] = future
+            return future
+        }
+    }
+
+    /**
+     * @return future completed when namespace name is open, null if it is neither open nor opening
+     */
+    @JvmStatic
+    @JvmOverloads
+    @Synchronized
+    fun whenReady(name: String = DEFAULT_NAMESPACE): ListenableFuture<Namespace>? =
+        namespaces[name]?.let { Futures.immediateFuture(it) } ?: opening[name]
+
+    private fun createNamespace(context: Context, name: String, maxBytes: Long, persistent: Boolean): Namespace {
+        try {
+            // a cache folder can only be used by one instance, wait for the previous one to be released
+            synchronized(this) { releasing.remove(name) }?.get()
+            // pins must be known before the cache index is loaded
+            RNVCachePins.ensureLoaded(context)
+            val start = System.currentTimeMillis()
+            val evictor = ResizableCacheEvictor(maxBytes) { RNVCacheStats.CountingCacheEvictor(PinningCacheEvictor(it)) }
+            // loads the index, out of the lock so that players keep reading from network meanwhile
+            val cache = SimpleCache(directoryOf(context, name, persistent), evictor, getDatabaseProvider(context))
+            DebugLog.d(TAG, "opened cache $name, ${maxBytes / 1024 / 1024}MB in ${System.currentTimeMillis() - start}ms")
+            val namespace = Namespace(name, cache, evictor)
+            synchronized(this) {
+                opening.remove(name)
+                namespaces[name] = namespace
+            }
+            return namespace
+        } catch (e: Exception) {
+            DebugLog.e(TAG, "cannot open cache $name: $e")
+            synchronized(this) { opening.remove(name) }
+            throw e
+        }
+    }
+
+    @JvmStatic
+    @Synchronized
+    fun getDatabaseProvider(context: Context): DatabaseProvider =
+        databaseProvider ?: StandaloneDatabaseProvider(context.applicationContext).also { databaseProvider = it }
+
+    /** @return the cache of namespace name, null if it is not open */
+    @JvmStatic
+    @JvmOverloads
+    @Synchronized
+    fun getCache(name: String = DEFAULT_NAMESPACE): SimpleCache? = namespaces[name]?.cache
+
+    /** @return names of the open namespaces */
+    @JvmStatic
+    @Synchronized
+    fun getNamespaces(): List<String> = namespaces.keys.toList()
+
+    /** Change the size of namespace name, unpinned spans in excess are evicted */
+    @JvmStatic
+    @Synchronized
+    fun resize(name: String, maxBytes: Long): ListenableFuture<*>? {
+        val namespace = namespaces[name] ?: return null
+        if (maxBytes <= 0 || namespace.evictor.maxBytes == maxBytes) return null
+        return executor.submit {
+            DebugLog.d(TAG, "resizing cache $name to ${maxBytes / 1024 / 1024}MB")
+            namespace.evictor.setMaxBytes(namespace.cache, maxBytes)
+        }
+    }
+
+    /** Remove all content of namespace name */
+    @JvmStatic
+    @Synchronized
+    fun clear(name: String): ListenableFuture<*>? {
+        val cache = namespaces[name]?.cache ?: return null
+        return executor.submit {
+            for (key in cache.keys) {
+                cache.removeResource(key)
+            }
+        }
+    }
+
+    /**
+     * Remove content of cache key from namespace name, or from all namespaces when name is null
+     */
+    @JvmStatic
+    @Synchronized
+    fun removeContent(key: String, name: String?): ListenableFuture<*> {
+        val caches = if (name == null) namespaces.values.map { it.cache } else listOfNotNull(namespaces[name]?.cache)
+        return executor.submit {
+            caches.forEach { it.removeResource(key) }
+        }
+    }
+
+    /**
+     * Release the cache of namespace name, content stays on disk and is available when the namespace is opened again.
+     * Factories of players (see switchingFactory) read from upstream from their next open.
+     */
+    @JvmStatic
+    @Synchronized
+    fun release(name: String): ListenableFuture<*>? {
+        val namespace = namespaces.remove(name) ?: return null
+        return executor.submit {
+            namespace.cache.release()
+            DebugLog.d(TAG, "released cache $name")
+        }.also { releasing[name] = it }
+    }
+
+    /**
+     * @return factory reading through the default namespace, or through the network while the namespace is opening
+     */
+    @JvmOverloads
+    fun getCacheFactory(
+        factory: DataSource.Factory,
+        cacheKeyFactory: CacheKeyFactory = CacheKeyFactory.DEFAULT,
+        statsSession: RNVCacheStats.Session? = null
+    ): DataSource.Factory {
+        if (getCache() == null && whenReady() == null) return factory
+        return switchingFactory(DEFAULT_NAMESPACE, factory) { buildCacheDataSourceFactory(it, factory, cacheKeyFactory, statsSession) }
+    }
+
+    /**
+     * @return factory reading through the cache of namespace name with the factory built by cacheFactory,
+     * or through upstreamFactory while the namespace is not open: still opening, or released
+     */
+    @JvmStatic
+    fun switchingFactory(name: String, upstreamFactory: DataSource.Factory, cacheFactory: (SimpleCache) -> DataSource.Factory): DataSource.Factory {
+        // factory of the current cache instance, built again when the namespace is opened again
+        var built: Pair<SimpleCache, DataSource.Factory>? = null
+        val lock = Any()
+        return CacheSwitchingDataSource.Factory(upstreamFactory) {
+            getCache(name)?.let { cache ->
+                synchronized(lock) {
+                    built?.takeIf { it.first === cache }?.second
+                        ?: cacheFactory(cache).also { built = cache to it }
+                }
+            }
+        }
+    }
+
+    private fun buildCacheDataSourceFactory(
+        cache: SimpleCache,
+        factory: DataSource.Factory,
+        cacheKeyFactory: CacheKeyFactory,
+        statsSession: RNVCacheStats.Session?
+    ): DataSource.Factory =
+        CacheDataSource.Factory()
+            .setCache(cache)
+            .setCacheKeyFactory(cacheKeyFactory)
+            .setCacheReadDataSourceFactory(MappedFileDataSource.cacheReadFactory())
+            .setUpstreamDataSourceFactory(RNVCacheStats.countingFactory(factory, statsSession))
+            .setEventListener(RNVCacheStats.eventListener(statsSession))
+
+    private fun directoryOf(context: Context, name: String, persistent: Boolean): File {
+        val parent = if (persistent) context.filesDir else context.cacheDir
+        return File(parent, if (name == DEFAULT_NAMESPACE) DEFAULT_DIRECTORY else "$DEFAULT_DIRECTORY-$name")
     }
 }
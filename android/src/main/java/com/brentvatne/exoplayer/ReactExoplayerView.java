@@ -14,6 +14,7 @@ import android.app.PictureInPictureParams;
 import android.app.RemoteAction;
 import android.app.AlertDialog;
 import android.content.ComponentName;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
@@ -29,8 +30,10 @@ import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.Pair;
 import android.util.Rational;
 import android.view.View;
 import android.view.ViewGroup;
@@ -55,6 +58,7 @@ import androidx.media3.common.StreamKey;
 import androidx.media3.common.Timeline;
 import androidx.media3.common.TrackGroup;
 import androidx.media3.common.TrackSelectionOverride;
+import androidx.media3.common.TrackSelectionParameters;
 import androidx.media3.common.Tracks;
 import androidx.media3.common.text.CueGroup;
 import androidx.media3.common.util.Util;
@@ -64,6 +68,8 @@ import androidx.media3.datasource.HttpDataSource;
 import androidx.media3.exoplayer.DefaultLoadControl;
 import androidx.media3.exoplayer.DefaultRenderersFactory;
 import androidx.media3.exoplayer.ExoPlayer;
+import androidx.media3.exoplayer.SeekParameters;
+import androidx.media3.exoplayer.analytics.AnalyticsListener;
 import androidx.media3.exoplayer.dash.DashMediaSource;
 import androidx.media3.exoplayer.dash.DashUtil;
 import androidx.media3.exoplayer.dash.DefaultDashChunkSource;
@@ -71,23 +77,23 @@ import androidx.media3.exoplayer.dash.manifest.AdaptationSet;
 import androidx.media3.exoplayer.dash.manifest.DashManifest;
 import androidx.media3.exoplayer.dash.manifest.Period;
 import androidx.media3.exoplayer.dash.manifest.Representation;
-import androidx.media3.exoplayer.drm.DefaultDrmSessionManager;
 import androidx.media3.exoplayer.drm.DefaultDrmSessionManagerProvider;
 import androidx.media3.exoplayer.drm.DrmSessionEventListener;
 import androidx.media3.exoplayer.drm.DrmSessionManager;
 import androidx.media3.exoplayer.drm.DrmSessionManagerProvider;
-import androidx.media3.exoplayer.drm.FrameworkMediaDrm;
-import androidx.media3.exoplayer.drm.HttpMediaDrmCallback;
 import androidx.media3.exoplayer.drm.UnsupportedDrmException;
 import androidx.media3.exoplayer.hls.HlsMediaSource;
 import androidx.media3.exoplayer.ima.ImaAdsLoader;
 import androidx.media3.exoplayer.mediacodec.MediaCodecInfo;
 import androidx.media3.exoplayer.mediacodec.MediaCodecUtil;
+import androidx.media3.exoplayer.offline.Download;
 import androidx.media3.exoplayer.rtsp.RtspMediaSource;
 import androidx.media3.exoplayer.smoothstreaming.DefaultSsChunkSource;
 import androidx.media3.exoplayer.smoothstreaming.SsMediaSource;
 import androidx.media3.exoplayer.source.ClippingMediaSource;
 import androidx.media3.exoplayer.source.DefaultMediaSourceFactory;
+import androidx.media3.exoplayer.source.LoadEventInfo;
+import androidx.media3.exoplayer.source.MediaLoadData;
 import androidx.media3.exoplayer.source.MediaSource;
 import androidx.media3.exoplayer.source.MergingMediaSource;
 import androidx.media3.exoplayer.source.ProgressiveMediaSource;
@@ -115,6 +121,7 @@ import com.brentvatne.common.api.BufferConfig;
 import com.brentvatne.common.api.BufferingStrategy;
 import com.brentvatne.common.api.ControlsConfig;
 import com.brentvatne.common.api.DRMProps;
+import com.brentvatne.common.api.ParallelRangeProps;
 import com.brentvatne.common.api.ResizeMode;
 import com.brentvatne.common.api.SideLoadedTextTrack;
 import com.brentvatne.common.api.Source;
@@ -140,6 +147,10 @@ import com.google.ads.interactivemedia.v3.api.AdEvent;
 import com.google.ads.interactivemedia.v3.api.ImaSdkFactory;
 import com.google.ads.interactivemedia.v3.api.ImaSdkSettings;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import java.net.CookieHandler;
 import java.net.CookieManager;
@@ -153,6 +164,8 @@ import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -178,6 +191,12 @@ public class ReactExoplayerView extends FrameLayout implements
     private static final CookieManager DEFAULT_COOKIE_MANAGER;
     private static final int SHOW_PROGRESS = 1;
 
+    // viewport size ratio below which the video resolution cap is lowered
+    private static final float VIEWPORT_SHRINK_THRESHOLD = 0.75f;
+    private static final long VIEWPORT_SHRINK_DELAY_MS = 1000;
+    // tracks up to this ratio of the viewport size are allowed
+    private static final float MAX_VIDEO_SIZE_MARGIN = 1.5f;
+
     static {
         DEFAULT_COOKIE_MANAGER = new CookieManager();
         DEFAULT_COOKIE_MANAGER.setCookiePolicy(CookiePolicy.ACCEPT_ORIGINAL_SERVER);
@@ -220,7 +239,15 @@ public class ReactExoplayerView extends FrameLayout implements
     private float rate = 1f;
     private float audioVolume = 1f;
     private int maxBitRate = 0;
-    private boolean hasDrmFailed = false;
+    private int viewportWidth = 0;
+    private int viewportHeight = 0;
+    private int appliedViewportWidth = 0;
+    private int appliedViewportHeight = 0;
+    private final Runnable applyViewportConstraintsRunnable = this::applyViewportConstraints;
+    // read by the startup stages, captured when they are started
+    private volatile boolean hasDrmFailed = false;
+    // the DRM capability profile records one success per source, not one per ready state
+    private boolean isDrmSuccessRecorded = false;
     private boolean isUsingContentResolution = false;
     private boolean selectTrackWhenReady = false;
     private Runnable playerInitRunnable;
@@ -254,7 +281,12 @@ public class ReactExoplayerView extends FrameLayout implements
     private float mProgressUpdateInterval = 250.0f;
     protected boolean playInBackground = false;
     private boolean mReportBandwidth = false;
+    private final StartupTracer startupTracer = new StartupTracer();
+    private RNVCacheStats.Session cacheStatsSession;
     private boolean controls;
+    private boolean audioOnly = false;
+    private boolean isVideoSuspendedInBackground = false;
+    private long videoResumeStartNanos = -1;
 
     private boolean showNotificationControls = false;
     // \ End props
@@ -279,7 +311,71 @@ public class ReactExoplayerView extends FrameLayout implements
 
     private final String instanceId = String.valueOf(UUID.randomUUID());
 
+    // only registered while the startup tracer is enabled
+    private final AnalyticsListener startupAnalyticsListener = new AnalyticsListener() {
+        @Override
+        public void onLoadCompleted(@NonNull EventTime eventTime, @NonNull LoadEventInfo loadEventInfo, @NonNull MediaLoadData mediaLoadData) {
+            startupTracer.mark(StartupTracer.FIRST_LOAD);
+        }
+    };
+
+    // shared by all views, runs the independent startup stages of a source
+    private static final ListeningExecutorService startupExecutor = MoreExecutors.listeningDecorator(Executors.newCachedThreadPool());
+    // continuations of the startup stages run on the main thread, they never wait for a stage
+    private static final Executor mainThreadExecutor = new Handler(Looper.getMainLooper())::post;
+
+    /**
+     * Background stages of a single initializePlayer call, cancelled when the source is superseded or the player released.
+     */
+    private static final class SourceStages {
+        ListenableFuture<DataSource.Factory> dataSourceFactory;
+        ListenableFuture<DrmSessionManager> drmSessionManager;
+        ListenableFuture<MediaSource> textSource;
+        // startup trace the stages belong to
+        int traceGeneration;
+        // security level captured on the main thread when the stages start
+        boolean forceL3;
+        // set on the main thread once the media source owns the DRM session manager
+        boolean isDrmSessionManagerTaken = false;
+        private volatile boolean cancelled = false;
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        // main thread only
+        void cancel() {
+            cancelled = true;
+            dataSourceFactory.cancel(false);
+            textSource.cancel(false);
+            if (!isDrmSessionManagerTaken) {
+                // not cancelled, a running stage would drop its result: release it once built instead
+                drmSessionManager.addListener(this::releaseDrmSessionManager, MoreExecutors.directExecutor());
+            }
+        }
+
+        private void releaseDrmSessionManager() {
+            DrmSessionManager manager;
+            try {
+                manager = Futures.getDone(drmSessionManager);
+            } catch (Exception e) {
+                return;
+            }
+            if (manager != null) {
+                // an unused manager holds its MediaDrm from prepare to release, this releases what it acquired when built
+                manager.prepare();
+                manager.release();
+            }
+        }
+    }
+
+    // stages of the last initializePlayer call, main thread only
+    private SourceStages sourceStages;
+
     private CmcdConfiguration.Factory cmcdConfigurationFactory;
+    private CMCDConfig cmcdConfig;
+    // CMCD session id, kept until the player is released
+    private String cmcdSessionId;
 
     //CentralizedPlayerManager interface
     private CentralizedPlaybackManager.LocalBinderConnection cpmConnection = null;
@@ -347,6 +443,8 @@ public class ReactExoplayerView extends FrameLayout implements
         }
 
         createViews();
+        CodecCapabilityIndex.ensureLoaded(context);
+        RNVMemoryCache.registerMemoryCallbacks(context);
 
         themedReactContext.addLifecycleEventListener(this);
         // PIP listener will be added when enterPictureInPictureOnLeave prop is set
@@ -373,6 +471,11 @@ public class ReactExoplayerView extends FrameLayout implements
         if (this.enterPictureInPictureOnLeave) {
             exoPlayerView.addOnLayoutChangeListener((View v, int l, int t, int r, int b, int ol, int ot, int or, int ob) -> PictureInPictureUtil.applySourceRectHint(themedReactContext, pictureInPictureParamsBuilder, exoPlayerView));
         }
+        exoPlayerView.addOnLayoutChangeListener((View v, int l, int t, int r, int b, int ol, int ot, int or, int ob) -> {
+            if (r - l != or - ol || b - t != ob - ot) {
+                onViewportSizeChanged(r - l, b - t);
+            }
+        });
         exoPlayerView.setLayoutParams(layoutParams);
         addView(exoPlayerView, 0, layoutParams);
 
@@ -395,6 +498,7 @@ public class ReactExoplayerView extends FrameLayout implements
             setPlayWhenReady(!isPaused);
         }
         isInBackground = false;
+        resumeVideoTrackFromBackground();
 
         // Register phone state listener for call interruption handling
         registerPhoneStateListener();
@@ -403,9 +507,15 @@ public class ReactExoplayerView extends FrameLayout implements
     @Override
     public void onHostPause() {
         isInBackground = true;
+        BandwidthEstimateStore.save();
         Activity activity = themedReactContext.getCurrentActivity();
         boolean isInPictureInPicture = Util.SDK_INT >= Build.VERSION_CODES.N && activity != null && activity.isInPictureInPictureMode();
         boolean isInMultiWindowMode = Util.SDK_INT >= Build.VERSION_CODES.N && activity != null && activity.isInMultiWindowMode();
+        if (playInBackground && !isInPictureInPicture && !isInMultiWindowMode && source.getSuspendVideoInBackground()) {
+            // nothing is visible, keep only the audio part running
+            isVideoSuspendedInBackground = true;
+            applyVideoTrackSuspension(false);
+        }
         if (playInBackground || isInPictureInPicture || isInMultiWindowMode) {
             return;
         }
@@ -803,6 +913,7 @@ public class ReactExoplayerView extends FrameLayout implements
                     establishPlayerConnection();
                 }
                 if (!source.isLocalAssetFile() && !source.isAsset() && source.getBufferConfig().getCacheSize() > 0) {
+                    // does not block, reads go to network until the cache index is loaded
                     RNVSimpleCache.INSTANCE.setSimpleCache(
                             this.getContext(),
                             source.getBufferConfig().getCacheSize()
@@ -822,10 +933,21 @@ public class ReactExoplayerView extends FrameLayout implements
         };
     }
 
-    private Runnable onPlayerInitializedRunnable(Source runningSource, ReactExoplayerView self){
-        return () -> new Handler(Looper.getMainLooper()).post(() -> {
+    private Runnable onPlayerInitializedRunnable(Source runningSource, SourceStages stages, ReactExoplayerView self){
+        // continues on the main thread once the data source factory is built, without joining it
+        return () -> stages.dataSourceFactory.addListener(() -> {
             Log.d(TAG, "Running Player Post-Initialization");
-            if(playerReleased) return;
+            if(playerReleased || stages.isCancelled()) return;
+            startupTracer.mark(StartupTracer.PLAYER_CONNECTION_END);
+
+            try {
+                mediaDataSourceFactory = getStageResult(stages.dataSourceFactory);
+            } catch (Exception ex) {
+                self.playerNeedsSource = true;
+                DebugLog.e(TAG, "Failed to build data source factory: " + ex);
+                eventEmitter.onVideoError.invoke(ex.toString(), ex, "1001");
+                return;
+            }
 
             boolean postInitSuccessful = postInitializePlayerCore(self, runningSource);
             if(!postInitSuccessful) return;
@@ -835,26 +957,18 @@ public class ReactExoplayerView extends FrameLayout implements
                 // Will force display of shutter view if needed
                 exoPlayerView.updateShutterViewVisibility();
                 exoPlayerView.invalidateAspectRatio();
-                // DRM session manager creation must be done on a different thread to prevent crashes so we start a new thread
+                // DRM session manager creation runs in the startup stages, on a different thread to prevent crashes
 
                 if (viewHasDropped && runningSource == source) {
                     return;
                 }
-                try {
-                    // Source initialization must run on the main thread
-                    initializePlayerSource(runningSource);
-                } catch (Exception ex) {
-                    self.playerNeedsSource = true;
-                    DebugLog.e(TAG, "Failed to initialize Player! 1");
-                    DebugLog.e(TAG, ex.toString() + "\n" + Arrays.toString(ex.getStackTrace()));
-                    ex.printStackTrace();
-                    eventEmitter.onVideoError.invoke(ex.toString(), ex, "1001");
-                }
+                // Source initialization must run on the main thread
+                initializePlayerSource(runningSource, stages);
 
             } else if (runningSource == source) {
-                initializePlayerSource(runningSource);
+                initializePlayerSource(runningSource, stages);
             }
-        });
+        }, mainThreadExecutor);
     }
 
     private void initializePlayer() {
@@ -862,8 +976,12 @@ public class ReactExoplayerView extends FrameLayout implements
         //Activity activity = themedReactContext.getCurrentActivity();
         // This ensures all props have been settled, to avoid async racing conditions.
 
+        startupTracer.mark(StartupTracer.INITIALIZE_PLAYER);
+        cancelSourceStages();
+        SourceStages stages = startSourceStages(source);
+        sourceStages = stages;
         playerInitRunnable = initializePlayerRunnable(source,self);
-        playerPostInitRunnable = onPlayerInitializedRunnable(source,self);
+        playerPostInitRunnable = onPlayerInitializedRunnable(source, stages, self);
 
         // Connect to player to initialize a connection to it, then run some code once we have a solid player object.
         // If the centralized player is not being used, we don't need to wait for a connection and we can execute the post init right away
@@ -899,6 +1017,7 @@ public class ReactExoplayerView extends FrameLayout implements
     private boolean postInitializePlayerCore(ReactExoplayerView self, Source runningSource){
         Log.d(TAG, "Switched player to CPM from REV on thread " + Thread.currentThread());
         if(playerReleased) return false;
+        startupTracer.mark(StartupTracer.PLAYER_CREATION_START);
 
         ExoTrackSelection.Factory videoTrackSelectionFactory = new AdaptiveTrackSelection.Factory();
         self.trackSelector = new DefaultTrackSelector(getContext(), videoTrackSelectionFactory);
@@ -921,7 +1040,7 @@ public class ReactExoplayerView extends FrameLayout implements
 
             DefaultMediaSourceFactory mediaSourceFactory = new DefaultMediaSourceFactory(mediaDataSourceFactory);
             if (useCache) {
-                mediaSourceFactory.setDataSourceFactory(RNVSimpleCache.INSTANCE.getCacheFactory(buildHttpDataSourceFactory(true)));
+                mediaSourceFactory.setDataSourceFactory(RNVSimpleCache.INSTANCE.getCacheFactory(buildHttpDataSourceFactory(true), RNVCacheKeyFactory.forSource(runningSource), cacheStatsSession));
             }
 
             mediaSourceFactory.setLocalAdInsertionComponents(unusedAdTagUri -> adsLoader, exoPlayerView);
@@ -936,12 +1055,19 @@ public class ReactExoplayerView extends FrameLayout implements
             player = connection.getInstance();
         }
         if(player == null) return false;
+        startupTracer.mark(StartupTracer.PLAYER_CREATION_END);
 
         ReactNativeVideoManager.Companion.getInstance().onInstanceCreated(instanceId, player);
         refreshDebugState();
         player.addListener(self);
+        if (startupTracer.isEnabled()) {
+            player.removeAnalyticsListener(startupAnalyticsListener);
+            player.addAnalyticsListener(startupAnalyticsListener);
+        }
         player.setVolume(muted ? 0.f : audioVolume * 1);
         exoPlayerView.setPlayer(player);
+        applyVideoTrackSuspension(false);
+        applyViewportConstraints();
 
         audioBecomingNoisyReceiver.setListener(self);
         if(enterPictureInPictureOnLeave) {
@@ -966,6 +1092,7 @@ public class ReactExoplayerView extends FrameLayout implements
     private void establishPlayerConnection(){
         //Retrieve player
         Log.d(TAG,"Retrieving player");
+        startupTracer.mark(StartupTracer.PLAYER_CONNECTION_START);
         cpmConnection = new CentralizedPlaybackManager.LocalBinderConnection();
         Intent intent = new Intent(themedReactContext, CentralizedPlaybackManager.class);
         boolean serviceBound = themedReactContext.bindService(intent, cpmConnection, Context.BIND_AUTO_CREATE);
@@ -1008,33 +1135,109 @@ public class ReactExoplayerView extends FrameLayout implements
         return null;
     }
 
-    private DrmSessionManager initializePlayerDrm() {
+    /**
+     * Start the parts of source initialization which do not depend on the player instance.
+     * They run while the player is created (or while we wait for the central player), the main thread
+     * continues once they complete (see initializePlayerSource) and never waits for them.
+     * Ads loader is still created on the main thread, IMA SDK requires it.
+     */
+    private SourceStages startSourceStages(Source runningSource) {
+        SourceStages stages = new SourceStages();
+        stages.traceGeneration = startupTracer.getGeneration();
+        stages.forceL3 = isDrmForcedToL3();
+        final Map<String, String> headers = runningSource.getHeaders();
+        stages.dataSourceFactory = startupExecutor.submit(() ->
+                DataSourceUtil.getDefaultDataSourceFactory(themedReactContext, bandwidthMeter, headers));
+        stages.drmSessionManager = startupExecutor.submit(() -> initializePlayerDrm(runningSource, stages));
+        final Future<DataSource.Factory> dataSourceFactory = stages.dataSourceFactory;
+        stages.textSource = startupExecutor.submit(() -> buildTextSource(runningSource, dataSourceFactory.get()));
+        return stages;
+    }
+
+    private void cancelSourceStages() {
+        if (sourceStages != null) {
+            sourceStages.cancel();
+            sourceStages = null;
+        }
+    }
+
+    /** @return result of a completed stage, rethrowing its error */
+    private static <T> T getStageResult(Future<T> stage) throws Exception {
+        try {
+            return Futures.getDone(stage);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    /**
+     * Runs on a startup thread, errors are reported by initializePlayerSource on the main thread.
+     */
+    private DrmSessionManager initializePlayerDrm(Source runningSource, SourceStages stages) throws UnsupportedDrmException {
         DrmSessionManager drmSessionManager = null;
-        DRMProps drmProps = source.getDrmProps();
+        DRMProps drmProps = runningSource.getDrmProps();
         // need to realign UUID in DRM Props from source
-        if (drmProps != null && drmProps.getDrmType() != null) {
+        if (drmProps != null && drmProps.getDrmType() != null && !stages.isCancelled()) {
+            startupTracer.mark(StartupTracer.DRM_START, stages.traceGeneration);
             UUID uuid = Util.getDrmUuid(drmProps.getDrmType());
             if (uuid != null) {
-                try {
-                    DebugLog.w(TAG, "drm buildDrmSessionManager");
-                    drmSessionManager = buildDrmSessionManager(uuid, drmProps);
-                } catch (UnsupportedDrmException e) {
-                    int errorStringId = Util.SDK_INT < 18 ? R.string.error_drm_not_supported
-                            : (e.reason == UnsupportedDrmException.REASON_UNSUPPORTED_SCHEME
-                            ? R.string.error_drm_unsupported_scheme : R.string.error_drm_unknown);
-                    eventEmitter.onVideoError.invoke(getResources().getString(errorStringId), e, "3003");
-                }
+                DrmLicensePrefetcher.onSourceStarted(drmProps);
+                DebugLog.w(TAG, "drm buildDrmSessionManager");
+                drmSessionManager = buildDrmSessionManager(uuid, drmProps, stages.forceL3);
             }
+            startupTracer.mark(StartupTracer.DRM_END, stages.traceGeneration);
         }
         return drmSessionManager;
     }
 
-    private void initializePlayerSource(Source runningSource) {
+    private void onDrmSessionManagerError(UnsupportedDrmException e) {
+        int errorStringId = Util.SDK_INT < 18 ? R.string.error_drm_not_supported
+                : (e.reason == UnsupportedDrmException.REASON_UNSUPPORTED_SCHEME
+                ? R.string.error_drm_unsupported_scheme : R.string.error_drm_unknown);
+        eventEmitter.onVideoError.invoke(getResources().getString(errorStringId), e, "3003");
+    }
+
+    /**
+     * Build and prepare the media source on the main thread once the DRM and text stages complete.
+     */
+    private void initializePlayerSource(Source runningSource, SourceStages stages) {
+        Futures.whenAllComplete(stages.drmSessionManager, stages.textSource).run(() -> {
+            if (playerReleased || stages.isCancelled()) return;
+            try {
+                initializePlayerSourceWithStages(runningSource, stages);
+            } catch (Exception ex) {
+                playerNeedsSource = true;
+                DebugLog.e(TAG, "Failed to initialize Player! 1");
+                DebugLog.e(TAG, ex.toString() + "\n" + Arrays.toString(ex.getStackTrace()));
+                eventEmitter.onVideoError.invoke(ex.toString(), ex, "1001");
+            }
+        }, mainThreadExecutor);
+    }
+
+    private void initializePlayerSourceWithStages(Source runningSource, SourceStages stages) throws Exception {
         if (runningSource.getUri() == null) {
             return;
         }
         /// init DRM
-        DrmSessionManager drmSessionManager = initializePlayerDrm();
+        DrmSessionManager drmSessionManager;
+        stages.isDrmSessionManagerTaken = true;
+        try {
+            drmSessionManager = getStageResult(stages.drmSessionManager);
+        } catch (UnsupportedDrmException e) {
+            // a superseded source does not report its errors
+            if (runningSource == source) {
+                onDrmSessionManagerError(e);
+            }
+            return;
+        } catch (DRMManager.DrmFrameworkException e) {
+            if (runningSource == source) {
+                // Handle the unknown exception and emit to JS
+                Throwable cause = e.getCause();
+                eventEmitter.onVideoError.invoke(cause.toString(), (Exception) cause, "3006");
+            }
+            return;
+        }
         if (drmSessionManager == null && runningSource.getDrmProps() != null && runningSource.getDrmProps().getDrmType() != null) {
             // Failed to initialize DRM session manager - cannot continue
             DebugLog.e(TAG, "Failed to initialize DRM Session Manager Framework!");
@@ -1053,7 +1256,7 @@ public class ReactExoplayerView extends FrameLayout implements
         MediaSource mediaSourceWithAds = initializeAds(videoSource, runningSource);
         MediaSource mediaSource = Objects.requireNonNullElse(mediaSourceWithAds, videoSource);
 
-        MediaSource subtitlesSource = buildTextSource();
+        MediaSource subtitlesSource = getStageResult(stages.textSource);
         if (subtitlesSource != null) {
             MediaSource[] mediaSourceArray = {mediaSource, subtitlesSource};
             mediaSource = new MergingMediaSource(mediaSourceArray);
@@ -1071,6 +1274,7 @@ public class ReactExoplayerView extends FrameLayout implements
             } else {
                 player.setMediaSource(mediaSource, true);
             }
+            startupTracer.mark(StartupTracer.PREPARE);
             player.prepare();
             playerNeedsSource = false;
 
@@ -1166,44 +1370,75 @@ public class ReactExoplayerView extends FrameLayout implements
         }
     }
 
-    private DrmSessionManager buildDrmSessionManager(UUID uuid, DRMProps drmProps) throws UnsupportedDrmException {
-        return buildDrmSessionManager(uuid, drmProps, 0);
+    private DrmSessionManager buildDrmSessionManager(UUID uuid, DRMProps drmProps, boolean forceL3) throws UnsupportedDrmException {
+        DRMManagerSpec drmManager = ReactNativeVideoManager.Companion.getInstance().getDRMManager();
+        if (drmManager == null) {
+            drmManager = new DRMManager(buildHttpDataSourceFactory(false), themedReactContext, forceL3);
+        }
+        return drmManager.buildDrmSessionManager(uuid, drmProps);
     }
 
-    private DrmSessionManager buildDrmSessionManager(UUID uuid, DRMProps drmProps, int retryCount) throws UnsupportedDrmException {
-        if (Util.SDK_INT < 18) {
-            return null;
+    /**
+     * L3 is used after a DRM failure of the current source, or up front on devices where L1 is known to fail.
+     */
+    private boolean isDrmForcedToL3() {
+        return hasDrmFailed || DrmCapabilityProfile.shouldForceL3(themedReactContext);
+    }
+
+    private boolean isWidevineSource() {
+        DRMProps drmProps = source.getDrmProps();
+        return drmProps != null && C.WIDEVINE_UUID.equals(Util.getDrmUuid(drmProps.getDrmType()));
+    }
+
+    /**
+     * Once a protected content plays, store its license offline for next playbacks if requested.
+     */
+    private void maybeStoreOfflineLicense() {
+        DRMProps drmProps = source.getDrmProps();
+        if (player == null || drmProps == null || !drmProps.getPersistLicense()) {
+            return;
         }
-        try {
-            HttpMediaDrmCallback drmCallback = new HttpMediaDrmCallback(drmProps.getDrmLicenseServer(),
-                    buildHttpDataSourceFactory(false));
-
-            String[] keyRequestPropertiesArray = drmProps.getDrmLicenseHeader();
-            for (int i = 0; i < keyRequestPropertiesArray.length - 1; i += 2) {
-                drmCallback.setKeyRequestProperty(keyRequestPropertiesArray[i], keyRequestPropertiesArray[i + 1]);
-            }
-            FrameworkMediaDrm mediaDrm = FrameworkMediaDrm.newInstance(uuid);
-            if (hasDrmFailed) {
-                // When DRM fails using L1 we want to switch to L3
-                mediaDrm.setPropertyString("securityLevel", "L3");
-            }
-            return new DefaultDrmSessionManager.Builder()
-                    .setUuidAndExoMediaDrmProvider(uuid, (_uuid) -> mediaDrm)
-                    .setKeyRequestParameters(null)
-                    .setMultiSession(drmProps.getMultiDrm())
-                    .build(drmCallback);
-        } catch (UnsupportedDrmException ex) {
-            // Unsupported DRM exceptions are handled by the calling method
-            throw ex;
-        } catch (Exception ex) {
-            if (retryCount < 3) {
-                // Attempt retry 3 times in case where the OS Media DRM Framework fails for whatever reason
-                return buildDrmSessionManager(uuid, drmProps, ++retryCount);
-            }
-            // Handle the unknow exception and emit to JS
-            eventEmitter.onVideoError.invoke(ex.toString(), ex, "3006");
-            return null;
+        UUID uuid = Util.getDrmUuid(drmProps.getDrmType());
+        Format format = player.getVideoFormat() != null ? player.getVideoFormat() : player.getAudioFormat();
+        if (uuid == null || format == null || format.drmInitData == null) {
+            return;
         }
+        OfflineLicenseCache.acquireAsync(themedReactContext, uuid, drmProps, format, buildHttpDataSourceFactory(false));
+    }
+
+    /**
+     * Data source factory reading through the cache, with the cache keys of the current source
+     */
+    private DataSource.Factory buildCacheDataSourceFactory() {
+        return RNVSimpleCache.INSTANCE.getCacheFactory(buildHttpDataSourceFactory(true), RNVCacheKeyFactory.forSource(source), cacheStatsSession);
+    }
+
+    /**
+     * Data source factory reading downloaded content of the current source before upstreamFactory
+     */
+    private DataSource.Factory buildDownloadDataSourceFactory(DataSource.Factory upstreamFactory, @Nullable Download download) {
+        if (download == null) {
+            return upstreamFactory;
+        }
+        return RNVDownloadManager.buildDataSourceFactory(themedReactContext, source, upstreamFactory);
+    }
+
+    /**
+     * Data source factory serving small objects (manifests, init segments, subtitles) from memory before upstreamFactory
+     */
+    private DataSource.Factory buildMemoryCacheDataSourceFactory(DataSource.Factory upstreamFactory) {
+        return new RNVMemoryCacheDataSource.Factory(upstreamFactory, RNVCacheKeyFactory.forSource(source));
+    }
+
+    /**
+     * Data source factory loading progressive content with concurrent range requests when the source enables it
+     */
+    private DataSource.Factory buildParallelRangeDataSourceFactory(DataSource.Factory upstreamFactory) {
+        ParallelRangeProps props = source.getParallelRangeProps();
+        if (props == null) {
+            return upstreamFactory;
+        }
+        return new ParallelRangeDataSource.Factory(upstreamFactory, props);
     }
 
     private MediaSource buildMediaSource(Uri uri, String overrideExtension, DrmSessionManager drmSessionManager, long cropStartMs, long cropEndMs, String mediaId) {
@@ -1243,6 +1478,12 @@ public class ReactExoplayerView extends FrameLayout implements
         MediaSource.Factory mediaSourceFactory;
         DrmSessionManagerProvider drmProvider;
         List<StreamKey> streamKeys = new ArrayList<>();
+        // downloaded content is read from the downloads cache, offline it is played with its downloaded tracks only
+        Download download = RNVDownloadManager.getDownload(themedReactContext, source);
+        if (download != null) {
+            DebugLog.d(TAG, "playing downloaded content " + download.request.id);
+            streamKeys.addAll(RNVDownloadManager.getOfflineStreamKeys(themedReactContext, download));
+        }
         if (drmSessionManager != null) {
             drmProvider = ((_mediaItem) -> drmSessionManager);
         } else {
@@ -1258,8 +1499,8 @@ public class ReactExoplayerView extends FrameLayout implements
                 }
 
                 mediaSourceFactory = new SsMediaSource.Factory(
-                        new DefaultSsChunkSource.Factory(mediaDataSourceFactory),
-                        buildDataSourceFactory()
+                        new DefaultSsChunkSource.Factory(buildMemoryCacheDataSourceFactory(buildDownloadDataSourceFactory(mediaDataSourceFactory, download))),
+                        buildMemoryCacheDataSourceFactory(buildDownloadDataSourceFactory(buildDataSourceFactory(), download))
                 );
                 break;
             case CONTENT_TYPE_DASH:
@@ -1269,8 +1510,9 @@ public class ReactExoplayerView extends FrameLayout implements
                 }
 
                 mediaSourceFactory = new DashMediaSource.Factory(
-                        new DefaultDashChunkSource.Factory(mediaDataSourceFactory),
-                        buildDataSourceFactory()
+                        new DefaultDashChunkSource.Factory(buildMemoryCacheDataSourceFactory(
+                                buildDownloadDataSourceFactory(useCache ? buildCacheDataSourceFactory() : mediaDataSourceFactory, download))),
+                        buildMemoryCacheDataSourceFactory(buildDownloadDataSourceFactory(buildDataSourceFactory(), download))
                 );
                 break;
             case CONTENT_TYPE_HLS:
@@ -1282,29 +1524,29 @@ public class ReactExoplayerView extends FrameLayout implements
                 DataSource.Factory dataSourceFactory = mediaDataSourceFactory;
 
                 if (useCache) {
-                    dataSourceFactory = RNVSimpleCache.INSTANCE.getCacheFactory(buildHttpDataSourceFactory(true));
+                    dataSourceFactory = buildCacheDataSourceFactory();
                 }
 
                 mediaSourceFactory = new HlsMediaSource.Factory(
-                        dataSourceFactory
+                        buildMemoryCacheDataSourceFactory(buildDownloadDataSourceFactory(dataSourceFactory, download))
                 ).setAllowChunklessPreparation(source.getTextTracksAllowChunklessPreparation());
                 break;
             case CONTENT_TYPE_OTHER:
-                if ("asset".equals(uri.getScheme())) {
-                    try {
-                        DataSource.Factory assetDataSourceFactory = DataSourceUtil.buildAssetDataSourceFactory(themedReactContext, uri);
-                        mediaSourceFactory = new ProgressiveMediaSource.Factory(assetDataSourceFactory);
-                    } catch (Exception e) {
-                        throw new IllegalStateException("cannot open input file:" + uri);
-                    }
-                } else if ("file".equals(uri.getScheme()) ||
-                        !useCache) {
+                if ("asset".equals(uri.getScheme()) || ContentResolver.SCHEME_ANDROID_RESOURCE.equals(uri.getScheme())) {
+                    mediaSourceFactory = new ProgressiveMediaSource.Factory(DataSourceUtil.buildAssetDataSourceFactory(themedReactContext));
+                } else if ("file".equals(uri.getScheme())) {
+                    mediaSourceFactory = new ProgressiveMediaSource.Factory(new MappedFileDataSource.Factory(mediaDataSourceFactory));
+                } else if (!useCache) {
                     mediaSourceFactory = new ProgressiveMediaSource.Factory(
-                            mediaDataSourceFactory
+                            buildDownloadDataSourceFactory(buildParallelRangeDataSourceFactory(mediaDataSourceFactory), download)
                     );
                 } else {
+                    // ranges are loaded below the cache, which writes them in order
                     mediaSourceFactory = new ProgressiveMediaSource.Factory(
-                            RNVSimpleCache.INSTANCE.getCacheFactory(buildHttpDataSourceFactory(true))
+                            buildDownloadDataSourceFactory(RNVSimpleCache.INSTANCE.getCacheFactory(
+                                    buildParallelRangeDataSourceFactory(buildHttpDataSourceFactory(true)),
+                                    RNVCacheKeyFactory.forSource(source),
+                                    cacheStatsSession), download)
                     );
 
                 }
@@ -1351,14 +1593,14 @@ public class ReactExoplayerView extends FrameLayout implements
     }
 
     @Nullable
-    private MediaSource buildTextSource() {
-        if (source.getSideLoadedTextTracks() == null) {
+    private MediaSource buildTextSource(Source runningSource, DataSource.Factory dataSourceFactory) {
+        if (runningSource.getSideLoadedTextTracks() == null) {
             return null;
         }
 
         List<MediaItem.SubtitleConfiguration> subtitleConfigurations = new ArrayList<>();
 
-        for (SideLoadedTextTrack track : source.getSideLoadedTextTracks().getTracks()) {
+        for (SideLoadedTextTrack track : runningSource.getSideLoadedTextTracks().getTracks()) {
             MediaItem.SubtitleConfiguration subtitleConfiguration = new MediaItem.SubtitleConfiguration.Builder(track.getUri())
                     .setMimeType(track.getType())
                     .setLanguage(track.getLanguage())
@@ -1370,16 +1612,24 @@ public class ReactExoplayerView extends FrameLayout implements
         }
 
         MediaItem subtitlesMediaItem = new MediaItem.Builder()
-                .setUri(source.getUri())
+                .setUri(runningSource.getUri())
                 .setSubtitleConfigurations(subtitleConfigurations).build();
 
-        return new DefaultMediaSourceFactory(mediaDataSourceFactory).createMediaSource(subtitlesMediaItem);
+        DataSource.Factory memoryCacheDataSourceFactory = new RNVMemoryCacheDataSource.Factory(dataSourceFactory, RNVCacheKeyFactory.forSource(runningSource));
+        return new DefaultMediaSourceFactory(memoryCacheDataSourceFactory).createMediaSource(subtitlesMediaItem);
     }
 
     private void releasePlayer() {
         new Handler(Looper.getMainLooper()).post(() -> {
             Log.d(TAG,"Player released");
             playerReleased = true;
+            cancelSourceStages();
+            startupTracer.cancel();
+            if (cacheStatsSession != null) {
+                RNVCacheStats.endSession(cacheStatsSession);
+                cacheStatsSession = null;
+            }
+            cmcdSessionId = null;
 
             if (player != null) {
                 if(playbackServiceBinder != null) {
@@ -1391,7 +1641,9 @@ public class ReactExoplayerView extends FrameLayout implements
                 if(!source.getUseCentralPlayer()){
                     player.release();
                 }
+                BandwidthEstimateStore.save();
                 player.removeListener(this);
+                player.removeAnalyticsListener(startupAnalyticsListener);
                 if (enterPictureInPictureOnLeave) {
                     PictureInPictureUtil.applyAutoEnterEnabled(themedReactContext, pictureInPictureParamsBuilder, false);
                 }
@@ -1728,6 +1980,16 @@ public class ReactExoplayerView extends FrameLayout implements
                     clearProgressMessageHandler(); // ensure there is no other message
                     startProgressHandler();
                     videoLoaded();
+                    maybeStoreOfflineLicense();
+                    if (isWidevineSource() && !isDrmSuccessRecorded) {
+                        isDrmSuccessRecorded = true;
+                        DrmCapabilityProfile.recordSuccess(themedReactContext, isDrmForcedToL3());
+                    }
+                    startupTracer.mark(StartupTracer.READY);
+                    if (player.getVideoFormat() == null || shouldSuspendVideoTrack()) {
+                        // no frame will be rendered
+                        reportStartupMetrics();
+                    }
                     if (selectTrackWhenReady && isUsingContentResolution) {
                         selectTrackWhenReady = false;
                         setSelectedTrack(C.TRACK_TYPE_VIDEO, videoTrackType, videoTrackValue);
@@ -2052,6 +2314,24 @@ public class ReactExoplayerView extends FrameLayout implements
         eventEmitter.onVolumeChange.invoke(volume);
     }
 
+    private void reportStartupMetrics() {
+        Map<String, Double> metrics = startupTracer.finish();
+        if (metrics != null) {
+            eventEmitter.onStartupMetrics.invoke(metrics);
+        }
+    }
+
+    @Override
+    public void onRenderedFirstFrame() {
+        reportStartupMetrics();
+        if (videoResumeStartNanos >= 0) {
+            long resumeDurationMs = TimeUnit.NANOSECONDS.toMillis(SystemClock.elapsedRealtimeNanos() - videoResumeStartNanos);
+            videoResumeStartNanos = -1;
+            DebugLog.d(TAG, "video resumed from background in " + resumeDurationMs + "ms");
+            eventEmitter.onBackgroundVideoResume.invoke(resumeDurationMs);
+        }
+    }
+
     @Override
     public void onIsPlayingChanged(boolean isPlaying) {
         if (isPlaying && isSeeking) {
@@ -2072,12 +2352,34 @@ public class ReactExoplayerView extends FrameLayout implements
         String errorString = "ExoPlaybackException: " + PlaybackException.getErrorCodeName(e.errorCode);
         String errorCode = "2" + e.errorCode;
         switch(e.errorCode) {
+            case PlaybackException.ERROR_CODE_DRM_LICENSE_EXPIRED:
+                // only an expired offline license is retried, with a license request, never with L3
+                if (OfflineLicenseCache.invalidate(themedReactContext, source.getDrmProps())) {
+                    playerNeedsSource = true;
+                    updateResumePosition();
+                    initializePlayer();
+                    setPlayWhenReady(true);
+                    return;
+                }
+                break;
             case PlaybackException.ERROR_CODE_DRM_DEVICE_REVOKED:
             case PlaybackException.ERROR_CODE_DRM_LICENSE_ACQUISITION_FAILED:
             case PlaybackException.ERROR_CODE_DRM_PROVISIONING_FAILED:
             case PlaybackException.ERROR_CODE_DRM_SYSTEM_ERROR:
             case PlaybackException.ERROR_CODE_DRM_UNSPECIFIED:
-                if (!hasDrmFailed) {
+                if (OfflineLicenseCache.invalidate(themedReactContext, source.getDrmProps())) {
+                    // The stored offline license cannot be used anymore, retry with a license request
+                    playerNeedsSource = true;
+                    updateResumePosition();
+                    initializePlayer();
+                    setPlayWhenReady(true);
+                    return;
+                }
+                boolean forcedL3 = isDrmForcedToL3();
+                if (isWidevineSource() && DrmCapabilityProfile.isSecurityLevelError(e.errorCode)) {
+                    DrmCapabilityProfile.recordFailure(themedReactContext, forcedL3);
+                }
+                if (!forcedL3) {
                     // When DRM fails to reach the app level certificate server it will fail with a source error so we assume that it is DRM related and try one more time
                     hasDrmFailed = true;
                     playerNeedsSource = true;
@@ -2159,21 +2461,33 @@ public class ReactExoplayerView extends FrameLayout implements
             boolean isSourceEqual = source.isEquals(this.source);
             hasDrmFailed = false;
             this.source = source;
-            this.mediaDataSourceFactory =
-                    DataSourceUtil.getDefaultDataSourceFactory(this.themedReactContext, bandwidthMeter,
-                            source.getHeaders());
 
             if (source.getCmcdProps() != null) {
-                CMCDConfig cmcdConfig = new CMCDConfig(source.getCmcdProps());
-                CmcdConfiguration.Factory factory = cmcdConfig.toCmcdConfigurationFactory();
-                this.setCmcdConfigurationFactory(factory);
+                if (cmcdSessionId == null) {
+                    cmcdSessionId = UUID.randomUUID().toString();
+                }
+                // CMCD data is formatted once per props and session
+                if (cmcdConfig == null || !cmcdConfig.getProps().equals(source.getCmcdProps()) || !cmcdConfig.getSessionId().equals(cmcdSessionId)) {
+                    cmcdConfig = new CMCDConfig(source.getCmcdProps(), cmcdSessionId);
+                    this.setCmcdConfigurationFactory(cmcdConfig.toCmcdConfigurationFactory());
+                }
             } else {
+                cmcdConfig = null;
                 this.setCmcdConfigurationFactory(null);
             }
 
             if (!isSourceEqual) {
+                isDrmSuccessRecorded = false;
+                cancelSourceStages();
+                startupTracer.start();
+                cacheStatsSession = RNVCacheStats.startSession(getId());
                 playerNeedsSource = true;
+                // data source factory is built by the startup stages
                 initializePlayer();
+            } else {
+                this.mediaDataSourceFactory =
+                        DataSourceUtil.getDefaultDataSourceFactory(this.themedReactContext, bandwidthMeter,
+                                source.getHeaders());
             }
         } else {
             clearSrc();
@@ -2200,6 +2514,24 @@ public class ReactExoplayerView extends FrameLayout implements
         mReportBandwidth = reportBandwidth;
     }
 
+    public void setReportStartupMetrics(boolean reportStartupMetrics) {
+        if (startupTracer.isEnabled() == reportStartupMetrics) {
+            return;
+        }
+        startupTracer.setEnabled(reportStartupMetrics);
+        if (!reportStartupMetrics) {
+            startupTracer.cancel();
+            return;
+        }
+        // prop can be applied after src in the same batch, start tracing the ongoing startup
+        if (source.getUri() != null && (player == null || player.getPlaybackState() != Player.STATE_READY)) {
+            startupTracer.start();
+        }
+        if (player != null) {
+            player.addAnalyticsListener(startupAnalyticsListener);
+        }
+    }
+
     public void setResizeModeModifier(@ResizeMode.Mode int resizeMode) {
         if (exoPlayerView != null) {
             exoPlayerView.setResizeMode(resizeMode);
@@ -2411,6 +2743,21 @@ public class ReactExoplayerView extends FrameLayout implements
         if (mimeType == null) {
             return true;
         }
+        if (!CodecCapabilityIndex.isLoaded()) {
+            // do not wait for the scan on the main thread
+            return isFormatSupportedByMediaCodecUtil(mimeType, width, height, frameRate);
+        }
+        Integer profile = null;
+        Integer level = null;
+        Pair<Integer, Integer> profileAndLevel = MediaCodecUtil.getCodecProfileAndLevel(format);
+        if (profileAndLevel != null) {
+            profile = profileAndLevel.first;
+            level = profileAndLevel.second;
+        }
+        return CodecCapabilityIndex.isSupported(themedReactContext, mimeType, width, height, frameRate, profile, level);
+    }
+
+    private boolean isFormatSupportedByMediaCodecUtil(String mimeType, int width, int height, float frameRate) {
         boolean isSupported;
         try {
             MediaCodecInfo codecInfo = MediaCodecUtil.getDecoderInfo(mimeType, false, false);
@@ -2641,6 +2988,114 @@ public class ReactExoplayerView extends FrameLayout implements
         this.playInBackground = playInBackground;
     }
 
+    public void setAudioOnly(boolean audioOnly) {
+        if (this.audioOnly == audioOnly) {
+            return;
+        }
+        this.audioOnly = audioOnly;
+        applyVideoTrackSuspension(true);
+    }
+
+    private boolean shouldSuspendVideoTrack() {
+        return audioOnly || isVideoSuspendedInBackground;
+    }
+
+    private void resumeVideoTrackFromBackground() {
+        if (!isVideoSuspendedInBackground) {
+            return;
+        }
+        isVideoSuspendedInBackground = false;
+        if (player != null && !shouldSuspendVideoTrack() && player.getCurrentTracks().containsType(C.TRACK_TYPE_VIDEO)) {
+            // reported once the first frame is rendered again, see onRenderedFirstFrame
+            videoResumeStartNanos = SystemClock.elapsedRealtimeNanos();
+        }
+        applyVideoTrackSuspension(true);
+    }
+
+    /**
+     * Disable (or re-enable) the video track type so that no video is downloaded or decoded,
+     * and detach the surface while it is disabled.
+     * For DASH and demuxed HLS this stops video segment requests entirely, for muxed streams
+     * only decoding and rendering is skipped.
+     *
+     * @param seekOnResume when video gets re-enabled, seek to the current position so the video
+     *                     renderer restarts from a key frame instead of waiting for the next one
+     */
+    private void applyVideoTrackSuspension(boolean seekOnResume) {
+        if (player == null) {
+            return;
+        }
+        boolean suspend = shouldSuspendVideoTrack();
+        TrackSelectionParameters parameters = player.getTrackSelectionParameters();
+        boolean wasDisabled = parameters.disabledTrackTypes.contains(C.TRACK_TYPE_VIDEO);
+        if (wasDisabled == suspend) {
+            exoPlayerView.setVideoOutputEnabled(!suspend);
+            return;
+        }
+        DebugLog.d(TAG, (suspend ? "suspending" : "resuming") + " video track");
+        if (suspend) {
+            exoPlayerView.setVideoOutputEnabled(false);
+        }
+        player.setTrackSelectionParameters(parameters.buildUpon()
+                .setTrackTypeDisabled(C.TRACK_TYPE_VIDEO, suspend)
+                .build());
+        if (!suspend) {
+            exoPlayerView.setVideoOutputEnabled(true);
+            if (seekOnResume && player.getPlaybackState() != Player.STATE_IDLE && player.isCurrentMediaItemSeekable()) {
+                player.setSeekParameters(SeekParameters.PREVIOUS_SYNC);
+                player.seekTo(player.getCurrentPosition());
+                player.setSeekParameters(SeekParameters.DEFAULT);
+            }
+        }
+    }
+
+    /**
+     * Layout of the video view changed, its size in pixels is used to cap the video resolution.
+     * A larger view raises the cap right away, a smaller one lowers it only when the size shrinks
+     * noticeably and after a delay, so resizing animations do not trigger track switches.
+     */
+    private void onViewportSizeChanged(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            // view detached while moving to fullscreen or PiP
+            return;
+        }
+        viewportWidth = width;
+        viewportHeight = height;
+        removeCallbacks(applyViewportConstraintsRunnable);
+        boolean grows = width > appliedViewportWidth || height > appliedViewportHeight;
+        boolean shrinks = width < appliedViewportWidth * VIEWPORT_SHRINK_THRESHOLD
+                && height < appliedViewportHeight * VIEWPORT_SHRINK_THRESHOLD;
+        if (appliedViewportWidth == 0 || grows) {
+            applyViewportConstraints();
+        } else if (shrinks) {
+            postDelayed(applyViewportConstraintsRunnable, VIEWPORT_SHRINK_DELAY_MS);
+        }
+    }
+
+    /**
+     * Restrict video tracks to the on-screen size of the view, no restriction in fullscreen.
+     */
+    private void applyViewportConstraints() {
+        if (player == null) {
+            return;
+        }
+        TrackSelectionParameters.Builder builder = player.getTrackSelectionParameters().buildUpon();
+        if (isFullscreen || viewportWidth == 0 || viewportHeight == 0) {
+            appliedViewportWidth = 0;
+            appliedViewportHeight = 0;
+            builder.clearViewportSizeConstraints().clearVideoSizeConstraints();
+        } else {
+            appliedViewportWidth = viewportWidth;
+            appliedViewportHeight = viewportHeight;
+            // the size is checked against both dimensions of the video, which can be rotated or cropped by the resize mode
+            int maxVideoSize = (int) (Math.max(viewportWidth, viewportHeight) * MAX_VIDEO_SIZE_MARGIN);
+            builder.setViewportSize(viewportWidth, viewportHeight, false)
+                    .setMaxVideoSize(maxVideoSize, maxVideoSize);
+        }
+        DebugLog.d(TAG, "video viewport " + appliedViewportWidth + "x" + appliedViewportHeight);
+        player.setTrackSelectionParameters(builder.build());
+    }
+
     public void setDisableFocus(boolean disableFocus) {
         this.disableFocus = disableFocus;
     }
@@ -2692,6 +3147,8 @@ public class ReactExoplayerView extends FrameLayout implements
             return; // Avoid generating events when nothing is changing
         }
         isFullscreen = fullscreen;
+        removeCallbacks(applyViewportConstraintsRunnable);
+        applyViewportConstraints();
 
         Activity activity = themedReactContext.getCurrentActivity();
         if (activity == null) {
@@ -40,9 +40,11 @@ class ReactExoplayerViewManager(private val config: ReactExoplayerConfig) : View
             "preventsDisplaySleepDuringVideoPlayback"
         private const val PROP_PROGRESS_UPDATE_INTERVAL = "progressUpdateInterval"
         private const val PROP_REPORT_BANDWIDTH = "reportBandwidth"
+        private const val PROP_REPORT_STARTUP_METRICS = "reportStartupMetrics"
         private const val PROP_RATE = "rate"
         private const val PROP_MAXIMUM_BIT_RATE = "maxBitRate"
         private const val PROP_PLAY_IN_BACKGROUND = "playInBackground"
+        private const val PROP_AUDIO_ONLY = "audioOnly"
         private const val PROP_DISABLE_FOCUS = "disableFocus"
         private const val PROP_BUFFERING_STRATEGY = "bufferingStrategy"
         private const val PROP_DISABLE_DISCONNECT_ERROR = "disableDisconnectError"
@@ -176,6 +178,11 @@ class ReactExoplayerViewManager(private val config: ReactExoplayerConfig) : View
         videoView.setReportBandwidth(reportBandwidth)
     }
 
+    @ReactProp(name = PROP_REPORT_STARTUP_METRICS, defaultBoolean = false)
+    fun setReportStartupMetrics(videoView: ReactExoplayerView, reportStartupMetrics: Boolean) {
+        videoView.setReportStartupMetrics(reportStartupMetrics)
+    }
+
     @ReactProp(name = PROP_RATE)
     fun setRate(videoView: ReactExoplayerView, rate: Float) {
         videoView.setRateModifier(rate)
@@ -191,6 +198,11 @@ class ReactExoplayerViewManager(private val config: ReactExoplayerConfig) : View
         videoView.setPlayInBackground(playInBackground)
     }
 
+    @ReactProp(name = PROP_AUDIO_ONLY, defaultBoolean = false)
+    fun setAudioOnly(videoView: ReactExoplayerView, audioOnly: Boolean) {
+        videoView.setAudioOnly(audioOnly)
+    }
+
     @ReactProp(name = PROP_DISABLE_FOCUS, defaultBoolean = false)
     fun setDisableFocus(videoView: ReactExoplayerView, disableFocus: Boolean) {
         videoView.setDisableFocus(disableFocus)
@@ -0,0 +1,53 @@
+package com.brentvatne.exoplayer
+
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.datasource.cache.Cache
+import androidx.media3.datasource.cache.CacheEvictor
+import androidx.media3.datasource.cache.CacheSpan
+
+/**
+ * Evictor whose size can change while the cache is in use.
+ * Resizing swaps the delegate for an evictor built with the new size and replays the cached spans into it,
+ * least recently used first, so spans in excess are evicted right away.
+ */
+@UnstableApi
+class ResizableCacheEvictor(maxBytes: Long, private val evictorFactory: (Long) -> CacheEvictor) : CacheEvictor {
+    @Volatile
+    var maxBytes: Long = maxBytes
+        private set
+
+    @Volatile
+    private var delegate: CacheEvictor = evictorFactory(maxBytes)
+
+    /** Resize cache, to be called off the main thread since spans may be deleted from disk */
+    fun setMaxBytes(cache: Cache, maxBytes: Long) {
+        // SimpleCache methods are synchronized on the cache, spans can't change during the replay
+        synchronized(cache) {
+            if (maxBytes == this.maxBytes) return
+            val newDelegate = evictorFactory(maxBytes)
+            this.maxBytes = maxBytes
+            delegate = newDelegate
+            newDelegate.onCacheInitialized()
+            val spans = ArrayList<CacheSpan>()
+            for (key in cache.keys) {
+                spans.addAll(cache.getCachedSpans(key))
+            }
+            spans.sortBy { it.lastTouchTimestamp }
+            for (span in spans) {
+                newDelegate.onSpanAdded(cache, span)
+            }
+        }
+    }
+
+    override fun requiresCacheSpanTouches(): Boolean = delegate.requiresCacheSpanTouches()
+
+    override fun onCacheInitialized() = delegate.onCacheInitialized()
+
+    override fun onStartFile(cache: Cache, key: String, position: Long, length: Long) = delegate.onStartFile(cache, key, position, length)
+
+    override fun onSpanAdded(cache: Cache, span: CacheSpan) = delegate.onSpanAdded(cache, span)
+
+    override fun onSpanRemoved(cache: Cache, span: CacheSpan) = delegate.onSpanRemoved(cache, span)
+
+    override fun onSpanTouched(cache: Cache, oldSpan: CacheSpan, newSpan: CacheSpan) = delegate.onSpanTouched(cache, oldSpan, newSpan)
+}
@@ -0,0 +1,142 @@
+package com.brentvatne.exoplayer
+
+import android.os.Build
+import android.os.SystemClock
+import android.os.Trace
+import com.brentvatne.common.toolbox.DebugLog
+
+/**
+ * Timestamps the startup phases of a source, from setSrc to the first rendered frame.
+ * Phases are mirrored as async trace sections so they show up in Perfetto / systrace.
+ *
+ * When disabled every call returns immediately, nothing is allocated: timestamps are
+ * stored in a preallocated array and trace section names are constants.
+ *
+ * Marks may come from startup threads: they pass the generation of the trace they belong to,
+ * and are dropped once that trace was restarted or cancelled.
+ */
+class StartupTracer {
+    @Volatile
+    var isEnabled = false
+    private var isRunning = false
+    private val timestamps = LongArray(MARK_COUNT)
+    private val traceCookie = System.identityHashCode(this)
+
+    /** Incremented by each start, finish and cancel */
+    @get:Synchronized
+    var generation = 0
+        private set
+
+    /** Start a new trace, called when a new source is set */
+    @Synchronized
+    fun start() {
+        if (!isEnabled) return
+        if (isRunning) {
+            endAllSections()
+        }
+        timestamps.fill(UNSET)
+        generation++
+        isRunning = true
+        mark(SET_SRC)
+    }
+
+    /** Record a mark of the current trace, only the first occurrence of each mark is kept */
+    @Synchronized
+    fun mark(mark: Int) {
+        if (!isRunning || timestamps[mark] != UNSET) return
+        timestamps[mark] = SystemClock.elapsedRealtimeNanos()
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && Trace.isEnabled()) {
+            for (section in SECTIONS) {
+                if (section.begin == mark) {
+                    Trace.beginAsyncSection(section.name, traceCookie)
+                } else if (section.end == mark && timestamps[section.begin] != UNSET) {
+                    Trace.endAsyncSection(section.name, traceCookie)
+                }
+            }
+        }
+    }
+
+    /** Record a mark from another thread, ignored when generation is not the one of the current trace */
+    @Synchronized
+    fun mark(mark: Int, generation: Int) {
+        if (generation != this.generation) return
+        mark(mark)
+    }
+
+    /**
+     * Stop the trace and return phase durations in milliseconds, -1 for phases which did not happen
+     * (no DRM, no central player...).
+     */
+    @Synchronized
+    fun finish(): Map<String, Double>? {
+        if (!isRunning) return null
+        mark(FIRST_FRAME)
+        isRunning = false
+        generation++
+        val metrics = HashMap<String, Double>()
+        for (section in SECTIONS) {
+            metrics[section.name.removePrefix(TRACE_PREFIX)] = durationMs(section.begin, section.end)
+        }
+        DebugLog.d(TAG, "startup metrics: $metrics")
+        return metrics
+    }
+
+    /** Abort current trace without reporting it */
+    @Synchronized
+    fun cancel() {
+        if (!isRunning) return
+        endAllSections()
+        isRunning = false
+        generation++
+    }
+
+    private fun endAllSections() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && Trace.isEnabled()) {
+            for (section in SECTIONS) {
+                if (timestamps[section.begin] != UNSET && timestamps[section.end] == UNSET) {
+                    Trace.endAsyncSection(section.name, traceCookie)
+                }
+            }
+        }
+    }
+
+    private fun durationMs(begin: Int, end: Int): Double {
+        val start = timestamps[begin]
+        val stop = timestamps[end]
+        if (start == UNSET || stop == UNSET) return -1.0
+        return (stop - start) / 1_000_000.0
+    }
+
+    private class Section(val name: String, val begin: Int, val end: Int)
+
+    companion object {
+        private const val TAG = "StartupTracer"
+        private const val TRACE_PREFIX = "RNV:"
+        private const val UNSET = -1L
+
+        const val SET_SRC = 0
+        const val INITIALIZE_PLAYER = 1
+        const val PLAYER_CONNECTION_START = 2
+        const val PLAYER_CONNECTION_END = 3
+        const val PLAYER_CREATION_START = 4
+        const val PLAYER_CREATION_END = 5
+        const val DRM_START = 6
+        const val DRM_END = 7
+        const val PREPARE = 8
+        const val FIRST_LOAD = 9
+        const val READY = 10
+        const val FIRST_FRAME = 11
+        private const val MARK_COUNT = 12
+
+        private val SECTIONS = arrayOf(
+            Section(TRACE_PREFIX + "total", SET_SRC, FIRST_FRAME),
+            Section(TRACE_PREFIX + "initializePlayer", SET_SRC, INITIALIZE_PLAYER),
+            Section(TRACE_PREFIX + "playerConnection", PLAYER_CONNECTION_START, PLAYER_CONNECTION_END),
+            Section(TRACE_PREFIX + "playerCreation", PLAYER_CREATION_START, PLAYER_CREATION_END),
+            Section(TRACE_PREFIX + "drm", DRM_START, DRM_END),
+            Section(TRACE_PREFIX + "firstLoad", PREPARE, FIRST_LOAD),
+            Section(TRACE_PREFIX + "ready", PREPARE, READY),
+            Section(TRACE_PREFIX + "firstFrame", READY, FIRST_FRAME)
+        )
+    }
+}
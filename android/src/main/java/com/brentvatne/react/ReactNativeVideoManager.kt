@@ -3,6 +3,7 @@ package com.brentvatne.react
 import android.util.Log
 import androidx.media3.common.MediaItem
 import androidx.media3.datasource.DataSource
+import androidx.media3.datasource.cache.CacheKeyFactory
 import androidx.media3.exoplayer.drm.DrmSessionManager
 import androidx.media3.exoplayer.source.MediaSource
 import com.brentvatne.common.api.Source
@@ -121,6 +122,16 @@ class ReactNativeVideoManager : RNVPlugin {
         return null
     }
 
+    fun overrideCacheKeyFactory(source: Source, cacheKeyFactory: CacheKeyFactory): CacheKeyFactory? {
+        for (plugin in pluginList) {
+            if (plugin !is RNVExoplayerPlugin) continue
+
+            val factory = plugin.overrideCacheKeyFactory(source, cacheKeyFactory)
+            if (factory != null) return factory
+        }
+        return null
+    }
+
     fun shouldDisableCache(source: Source): Boolean {
         for (plugin in pluginList) {
             if (plugin is RNVExoplayerPlugin && plugin.shouldDisableCache(source)) {
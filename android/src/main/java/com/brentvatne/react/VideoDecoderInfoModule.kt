@@ -1,17 +1,22 @@
 package com.brentvatne.react
 
-import android.media.MediaCodecList
-import android.media.MediaDrm
-import android.media.MediaFormat
-import android.media.UnsupportedSchemeException
 import android.os.Build
+import com.brentvatne.exoplayer.CodecCapabilityIndex
+import com.brentvatne.exoplayer.DrmCapabilityProfile
+import com.facebook.react.bridge.Arguments
 import com.facebook.react.bridge.Promise
 import com.facebook.react.bridge.ReactApplicationContext
 import com.facebook.react.bridge.ReactContextBaseJavaModule
 import com.facebook.react.bridge.ReactMethod
-import java.util.UUID
 
 class VideoDecoderInfoModule(reactContext: ReactApplicationContext?) : ReactContextBaseJavaModule(reactContext) {
+    init {
+        reactContext?.let {
+            DrmCapabilityProfile.ensureComputed(it)
+            CodecCapabilityIndex.ensureLoaded(it)
+        }
+    }
+
     override fun getName(): String = REACT_CLASS
 
     @ReactMethod
@@ -21,52 +26,67 @@ class VideoDecoderInfoModule(reactContext: ReactApplicationContext?) : ReactCont
             p.resolve(widevineLevel)
             return
         }
-        try {
-            val mediaDrm = MediaDrm(WIDEVINE_UUID)
-            val securityProperty = mediaDrm.getPropertyString(SECURITY_LEVEL_PROPERTY)
-            widevineLevel = when (securityProperty) {
-                "L1" -> 1
-                "L2" -> 2
-                "L3" -> 3
-                else -> 0
-            }
-        } catch (e: UnsupportedSchemeException) {
-            e.printStackTrace()
+        // Security level is read once per OS build and persisted
+        widevineLevel = when (DrmCapabilityProfile.getSecurityLevel(reactApplicationContext)) {
+            "L1" -> 1
+            "L2" -> 2
+            "L3" -> 3
+            else -> 0
         }
         p.resolve(widevineLevel)
     }
 
     @ReactMethod
     fun isCodecSupported(mimeType: String?, width: Double, height: Double, p: Promise?) {
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
-            p?.resolve("unsupported")
-            return
-        }
-        val mRegularCodecs = MediaCodecList(MediaCodecList.REGULAR_CODECS)
-        val format = MediaFormat.createVideoFormat(mimeType!!, width.toInt(), height.toInt())
-        val codecName = mRegularCodecs.findDecoderForFormat(format)
-        if (codecName == null) {
+        if (mimeType == null) {
             p?.resolve("unsupported")
             return
         }
+        val decoder = CodecCapabilityIndex.findDecoder(reactApplicationContext, mimeType, width.toInt(), height.toInt(), 0f)
+        p?.resolve(
+            when {
+                decoder == null -> "unsupported"
+                decoder.isHardwareAccelerated -> "hardware"
+                else -> "software"
+            }
+        )
+    }
 
-        // Fallback for android < 10
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
-            p?.resolve("software")
-            return
-        }
-        val isHardwareAccelerated = mRegularCodecs.codecInfos.any {
-            it.name.equals(codecName, ignoreCase = true) && it.isHardwareAccelerated
+    /**
+     * Capabilities of all decoders of the device, hardware accelerated decoders first for each mime type
+     */
+    @ReactMethod
+    fun getCodecCapabilities(p: Promise) {
+        val decoders = Arguments.createArray()
+        for (decoder in CodecCapabilityIndex.getAllDecoders(reactApplicationContext)) {
+            val profileLevels = Arguments.createArray()
+            decoder.profileLevels.forEach { (profile, level) ->
+                profileLevels.pushMap(
+                    Arguments.createMap().apply {
+                        putInt("profile", profile)
+                        putInt("level", level)
+                    }
+                )
+            }
+            decoders.pushMap(
+                Arguments.createMap().apply {
+                    putString("name", decoder.name)
+                    putString("mimeType", decoder.mimeType)
+                    putBoolean("hardwareAccelerated", decoder.isHardwareAccelerated)
+                    putInt("maxWidth", decoder.maxWidth)
+                    putInt("maxHeight", decoder.maxHeight)
+                    putDouble("maxFrameRate", decoder.maxFrameRate)
+                    putArray("profileLevels", profileLevels)
+                }
+            )
         }
-        p?.resolve(if (isHardwareAccelerated) "software" else "hardware")
+        p.resolve(decoders)
     }
 
     @ReactMethod
     fun isHEVCSupported(p: Promise) = isCodecSupported("video/hevc", 1920.0, 1080.0, p)
 
     companion object {
-        private val WIDEVINE_UUID = UUID(-0x121074568629b532L, -0x5c37d8232ae2de13L)
-        private const val SECURITY_LEVEL_PROPERTY = "securityLevel"
         private const val REACT_CLASS = "VideoDecoderInfoModule"
     }
 }
@@ -1,11 +1,21 @@
 package com.brentvatne.react
 
+import android.net.Uri
 import com.brentvatne.common.api.Source
+import com.brentvatne.common.toolbox.ReactBridgeUtils
+import com.brentvatne.exoplayer.DrmLicensePrefetcher
+import com.brentvatne.exoplayer.RNVCachePins
+import com.brentvatne.exoplayer.RNVConnectionWarmer
+import com.brentvatne.exoplayer.RNVCacheStats
+import com.brentvatne.exoplayer.RNVDownloadManager
+import com.brentvatne.exoplayer.RNVMediaHttpClient
+import com.brentvatne.exoplayer.RNVSimpleCache
 import com.brentvatne.exoplayer.ReactExoplayerView
 import com.facebook.react.bridge.Promise
 import com.facebook.react.bridge.ReactApplicationContext
 import com.facebook.react.bridge.ReactContextBaseJavaModule
 import com.facebook.react.bridge.ReactMethod
+import com.facebook.react.bridge.ReadableArray
 import com.facebook.react.bridge.ReadableMap
 import com.facebook.react.bridge.UiThreadUtil
 import com.facebook.react.bridge.WritableMap
@@ -13,11 +23,21 @@ import com.facebook.react.bridge.Arguments
 import com.facebook.react.modules.core.DeviceEventManagerModule
 import com.facebook.react.uimanager.UIManagerHelper
 import com.facebook.react.uimanager.common.UIManagerType
+import com.google.common.util.concurrent.FutureCallback
+import com.google.common.util.concurrent.Futures
+import com.google.common.util.concurrent.ListenableFuture
+import com.google.common.util.concurrent.MoreExecutors
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
 import kotlin.math.roundToInt
 
 class VideoManagerModule(reactContext: ReactApplicationContext?) : ReactContextBaseJavaModule(reactContext) {
     override fun getName(): String = REACT_CLASS
 
+    private val cacheExecutor = Executors.newSingleThreadScheduledExecutor()
+    private var cacheStatsTask: ScheduledFuture<*>? = null
+
     private fun performOnPlayerView(reactTag: Int, callback: (ReactExoplayerView?) -> Unit) {
         UiThreadUtil.runOnUiThread {
             try {
@@ -89,6 +109,257 @@ class VideoManagerModule(reactContext: ReactApplicationContext?) : ReactContextB
         }
     }
 
+    /**
+     * Queued playback is not supported on Android, upcoming sources are used to prefetch their DRM licenses
+     * and to warm the connection to the host of the next source
+     */
+    @ReactMethod
+    @Suppress("UNUSED_PARAMETER")
+    fun setQueueCmd(reactTag: Int, queue: ReadableArray?) {
+        val sources = ArrayList<Source>()
+        for (i in 0 until (queue?.size() ?: 0)) {
+            queue?.getMap(i)?.let { sources.add(Source.parse(it, reactApplicationContext)) }
+        }
+        DrmLicensePrefetcher.prefetchWindow(reactApplicationContext, sources)
+        sources.firstOrNull()?.uri?.let { RNVConnectionWarmer.warm(it) }
+    }
+
+    @ReactMethod
+    fun prefetchLicense(source: ReadableMap?) {
+        DrmLicensePrefetcher.prefetch(reactApplicationContext, Source.parse(source, reactApplicationContext))
+    }
+
+    @ReactMethod
+    fun getLicensePrefetchStats(promise: Promise) {
+        val stats = Arguments.createMap()
+        DrmLicensePrefetcher.getStats().forEach { (name, value) -> stats.putInt(name, value) }
+        promise.resolve(stats)
+    }
+
+    /**
+     * Resolve disk cache counters, per session bytes and the cached spans of each content
+     */
+    @ReactMethod
+    fun getCacheStats(promise: Promise) {
+        cacheExecutor.execute {
+            try {
+                promise.resolve(Arguments.makeNativeMap(RNVCacheStats.snapshot(RNVSimpleCache.getCache(), true)))
+            } catch (e: Exception) {
+                promise.reject("CACHE_STATS_ERROR", e)
+            }
+        }
+    }
+
+    /**
+     * Open cache namespace name (or resize it when already open), persistent namespaces are never cleared by the system
+     */
+    @ReactMethod
+    fun openCacheNamespace(name: String, sizeMB: Int, persistent: Boolean, promise: Promise) {
+        awaitCacheOperation(RNVSimpleCache.openNamespaceAsync(reactApplicationContext, name, sizeMB.toLong() * 1024 * 1024, persistent), promise)
+    }
+
+    /**
+     * Open the streaming cache in background, resolved once its index is loaded.
+     * Players started meanwhile read from network and switch to the cache when it is ready.
+     */
+    @ReactMethod
+    fun initializeCache(sizeMB: Int, promise: Promise) {
+        RNVSimpleCache.setSimpleCache(reactApplicationContext, sizeMB)
+        awaitCacheOperation(RNVSimpleCache.whenReady(), promise)
+    }
+
+    @ReactMethod
+    fun setCacheSize(namespace: String?, sizeMB: Int, promise: Promise) {
+        awaitCacheOperation(RNVSimpleCache.resize(namespace ?: RNVSimpleCache.DEFAULT_NAMESPACE, sizeMB.toLong() * 1024 * 1024), promise)
+    }
+
+    @ReactMethod
+    fun clearCache(namespace: String?, promise: Promise) {
+        awaitCacheOperation(RNVSimpleCache.clear(namespace ?: RNVSimpleCache.DEFAULT_NAMESPACE), promise)
+    }
+
+    /**
+     * Remove content of a cache key from namespace, or from all namespaces when namespace is null
+     */
+    @ReactMethod
+    fun removeCacheContent(key: String, namespace: String?, promise: Promise) {
+        awaitCacheOperation(RNVSimpleCache.removeContent(key, namespace), promise)
+    }
+
+    @ReactMethod
+    fun releaseCache(namespace: String?, promise: Promise) {
+        awaitCacheOperation(RNVSimpleCache.release(namespace ?: RNVSimpleCache.DEFAULT_NAMESPACE), promise)
+    }
+
+    /** Settle promise when operation completes, without holding cacheExecutor meanwhile */
+    private fun awaitCacheOperation(operation: ListenableFuture<*>?, promise: Promise) {
+        if (operation == null) {
+            promise.resolve(null)
+            return
+        }
+        Futures.addCallback(operation, object : FutureCallback<Any?> {
+            override fun onSuccess(result: Any?) {
+                promise.resolve(null)
+            }
+
+            override fun onFailure(t: Throwable) {
+                promise.reject("CACHE_ERROR", t)
+            }
+        }, MoreExecutors.directExecutor())
+    }
+
+    /**
+     * Pinned content of mediaId is not evicted from the caches while it fits in the pinned share of each cache
+     */
+    @ReactMethod
+    fun pinCacheContent(mediaId: String) {
+        RNVCachePins.pin(reactApplicationContext, mediaId)
+    }
+
+    @ReactMethod
+    fun unpinCacheContent(mediaId: String) {
+        RNVCachePins.unpin(reactApplicationContext, mediaId)
+    }
+
+    /**
+     * Unpinned content with a weight is evicted later, weight goes from 0 to 1 (likely to be resumed)
+     */
+    @ReactMethod
+    fun setCacheContentWeight(mediaId: String, weight: Float) {
+        RNVCachePins.setWeight(reactApplicationContext, mediaId, weight)
+    }
+
+    @ReactMethod
+    fun getCachePinStats(namespace: String?, promise: Promise) {
+        cacheExecutor.execute {
+            try {
+                val cache = RNVSimpleCache.getCache(namespace ?: RNVSimpleCache.DEFAULT_NAMESPACE)
+                promise.resolve(Arguments.makeNativeMap(RNVCachePins.getStats(cache)))
+            } catch (e: Exception) {
+                promise.reject("CACHE_ERROR", e)
+            }
+        }
+    }
+
+    /**
+     * Emit cache counters (without cache contents) every intervalMs, 0 to stop
+     */
+    @ReactMethod
+    fun setCacheStatsInterval(intervalMs: Int) {
+        synchronized(this) {
+            cacheStatsTask?.cancel(false)
+            cacheStatsTask = null
+            if (intervalMs <= 0) return
+            cacheStatsTask = cacheExecutor.scheduleWithFixedDelay({
+                emitEvent(CACHE_STATS_EVENT, Arguments.makeNativeMap(RNVCacheStats.snapshot(RNVSimpleCache.getCache(), false)))
+            }, intervalMs.toLong(), intervalMs.toLong(), TimeUnit.MILLISECONDS)
+        }
+    }
+
+    /**
+     * Download source for offline playback
+     * @param options audioOnly, or maxVideoHeight to cap the downloaded video rendition
+     */
+    @ReactMethod
+    fun downloadSource(id: String?, source: ReadableMap?, options: ReadableMap?, promise: Promise) {
+        val downloadOptions = RNVDownloadManager.Options(
+            ReactBridgeUtils.safeGetBool(options, "audioOnly", false),
+            ReactBridgeUtils.safeGetInt(options, "maxVideoHeight", 0)
+        )
+        RNVDownloadManager.download(reactApplicationContext, id, Source.parse(source, reactApplicationContext), downloadOptions) { error ->
+            if (error == null) promise.resolve(null) else promise.reject("DOWNLOAD_ERROR", error)
+        }
+    }
+
+    @ReactMethod
+    fun removeDownload(id: String) {
+        RNVDownloadManager.remove(reactApplicationContext, id)
+    }
+
+    @ReactMethod
+    fun pauseDownloads() {
+        RNVDownloadManager.pauseDownloads(reactApplicationContext)
+    }
+
+    @ReactMethod
+    fun resumeDownloads() {
+        RNVDownloadManager.resumeDownloads(reactApplicationContext)
+    }
+
+    @ReactMethod
+    fun setDownloadRequirements(unmeteredNetwork: Boolean, charging: Boolean) {
+        RNVDownloadManager.setRequirements(reactApplicationContext, unmeteredNetwork, charging)
+    }
+
+    @ReactMethod
+    fun setMaxParallelDownloads(maxParallelDownloads: Int) {
+        RNVDownloadManager.setMaxParallelDownloads(reactApplicationContext, maxParallelDownloads)
+    }
+
+    @ReactMethod
+    fun getDownloads(promise: Promise) {
+        cacheExecutor.execute {
+            try {
+                val downloads = Arguments.createArray()
+                RNVDownloadManager.getDownloads(reactApplicationContext).forEach {
+                    downloads.pushMap(Arguments.makeNativeMap(RNVDownloadManager.toMap(it)))
+                }
+                promise.resolve(downloads)
+            } catch (e: Exception) {
+                promise.reject("DOWNLOAD_ERROR", e)
+            }
+        }
+    }
+
+    /**
+     * Configure the OkHttp client of media requests, missing values keep their default
+     */
+    @ReactMethod
+    fun configureMediaHttpClient(config: ReadableMap?) {
+        val defaults = RNVMediaHttpClient.Config()
+        RNVMediaHttpClient.configure(
+            RNVMediaHttpClient.Config(
+                ReactBridgeUtils.safeGetInt(config, "maxRequests", defaults.maxRequests),
+                ReactBridgeUtils.safeGetInt(config, "maxRequestsPerHost", defaults.maxRequestsPerHost),
+                ReactBridgeUtils.safeGetInt(config, "maxIdleConnections", defaults.maxIdleConnections),
+                ReactBridgeUtils.safeGetDouble(config, "keepAliveMs", defaults.keepAliveMs.toDouble()).toLong(),
+                ReactBridgeUtils.safeGetDouble(config, "connectTimeoutMs", defaults.connectTimeoutMs.toDouble()).toLong(),
+                ReactBridgeUtils.safeGetDouble(config, "readTimeoutMs", defaults.readTimeoutMs.toDouble()).toLong(),
+                ReactBridgeUtils.safeGetDouble(config, "writeTimeoutMs", defaults.writeTimeoutMs.toDouble()).toLong(),
+                ReactBridgeUtils.safeGetBool(config, "preferHttp2", defaults.preferHttp2)
+            )
+        )
+    }
+
+    @ReactMethod
+    fun getMediaHttpStats(promise: Promise) {
+        promise.resolve(Arguments.makeNativeMap(RNVMediaHttpClient.getStats() + RNVConnectionWarmer.getStats()))
+    }
+
+    /**
+     * Resolve DNS and connect to the host of uri on the media client, resolved with the connect time saved
+     */
+    @ReactMethod
+    fun warmConnection(uri: String, promise: Promise) {
+        val warmup = RNVConnectionWarmer.warm(Uri.parse(uri))
+        if (warmup == null) {
+            promise.reject("WARM_ERROR", "unsupported uri $uri")
+            return
+        }
+        warmup.addListener({
+            try {
+                val result = warmup.get()
+                val map = Arguments.createMap()
+                map.putString("host", result.host)
+                map.putDouble("connectTimeMs", result.connectTimeMs.toDouble())
+                map.putBoolean("alreadyConnected", result.alreadyConnected)
+                promise.resolve(map)
+            } catch (e: Exception) {
+                promise.reject("WARM_ERROR", e.cause ?: e)
+            }
+        }, MoreExecutors.directExecutor())
+    }
+
     @ReactMethod
     fun getCurrentPosition(reactTag: Int, promise: Promise) {
         performOnPlayerView(reactTag) {
@@ -106,8 +377,25 @@ class VideoManagerModule(reactContext: ReactApplicationContext?) : ReactContextB
         }
     }
 
+    private fun emitEvent(name: String, data: WritableMap) {
+        try {
+            reactApplicationContext
+                ?.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter::class.java)
+                ?.emit(name, data)
+        } catch (e: Exception) {
+            // Handle error silently
+        }
+    }
+
+    override fun invalidate() {
+        cacheExecutor.shutdownNow()
+        super.invalidate()
+    }
+
     companion object {
         private const val REACT_CLASS = "VideoManager"
+        private const val CACHE_STATS_EVENT = "VideoCacheStats"
+        private const val DOWNLOAD_EVENT = "VideoDownloadProgress"
         
         @Volatile
         private var instance: VideoManagerModule? = null
@@ -123,5 +411,12 @@ class VideoManagerModule(reactContext: ReactApplicationContext?) : ReactContextB
 
     init {
         setInstance(this)
+        reactContext?.let {
+            RNVSimpleCache.preload(it)
+            RNVDownloadManager.preload(it)
+        }
+        RNVDownloadManager.listener = RNVDownloadManager.Listener {
+            emitEvent(DOWNLOAD_EVENT, Arguments.makeNativeMap(RNVDownloadManager.toMap(it)))
+        }
     }
 }
@@ -22,6 +22,7 @@ import NativeVideoComponent, {
 import type {
   OnAudioFocusChangedData,
   OnAudioTracksData,
+  OnBackgroundVideoResumeData,
   OnBandwidthUpdateData,
   OnBufferData,
   OnControlsVisibilityChange,
@@ -32,6 +33,7 @@ import type {
   OnPlaybackStateChangedData,
   OnProgressData,
   OnSeekData,
+  OnStartupMetricsData,
   OnTextTrackDataChangedData,
   OnTimedMetadataData,
   OnVideoAspectRatioData,
@@ -97,6 +99,8 @@ const Video = forwardRef<VideoRef, ReactVideoProps>(
       onPreviousTrack,
       onAudioBecomingNoisy,
       onPictureInPictureStatusChanged,
+      onBackgroundVideoResume,
+      onStartupMetrics,
       onRestoreUserInterfaceForPictureInPictureStop,
       onReceiveAdEvent,
       onPlaybackStateChanged,
@@ -194,6 +198,7 @@ const Video = forwardRef<VideoRef, ReactVideoProps>(
               base64Certificate: selectedDrm.base64Certificate,
               useExternalGetLicense: !!selectedDrm.getLicense,
               multiDrm: selectedDrm.multiDrm,
+              persistLicense: selectedDrm.persistLicense,
               localSourceEncryptionKeyScheme:
                 selectedDrm.localSourceEncryptionKeyScheme ||
                 localSourceEncryptionKeyScheme,
@@ -242,6 +247,7 @@ const Video = forwardRef<VideoRef, ReactVideoProps>(
           isAsset,
           isLocalAssetFile,
           useCentralPlayer,
+          suspendVideoInBackground: resolvedSource.suspendVideoInBackground,
           shouldCache: resolvedSource.shouldCache || false,
           type: resolvedSource.type || '',
           mainVer: resolvedSource.mainVer || 0,
@@ -255,6 +261,8 @@ const Video = forwardRef<VideoRef, ReactVideoProps>(
           drm: _drm,
           ad: _ad,
           cmcd: _cmcd,
+          cacheKey: resolvedSource.cacheKey,
+          parallelRanges: resolvedSource.parallelRanges,
           textTracks: _textTracks,
           textTracksAllowChunklessPreparation:
             resolvedSource.textTracksAllowChunklessPreparation,
@@ -419,6 +427,25 @@ const Video = forwardRef<VideoRef, ReactVideoProps>(
       [sourceToUnternalSource],
     );
 
+    const prefetchLicense = useCallback(
+      (_source: ReactVideoSource) => {
+        if (Platform.OS !== 'android') {
+          return;
+        }
+        return NativeVideoManager.prefetchLicense(
+          sourceToUnternalSource(_source),
+        );
+      },
+      [sourceToUnternalSource],
+    );
+
+    const getLicensePrefetchStats = useCallback(async () => {
+      if (Platform.OS !== 'android') {
+        return;
+      }
+      return NativeVideoManager.getLicensePrefetchStats();
+    }, []);
+
     const presentFullscreenPlayer = useCallback(
       () => setFullScreen(true),
       [setFullScreen],
@@ -601,6 +628,20 @@ const Video = forwardRef<VideoRef, ReactVideoProps>(
       [onPictureInPictureStatusChanged],
     );
 
+    const _onBackgroundVideoResume = useCallback(
+      (e: NativeSyntheticEvent<OnBackgroundVideoResumeData>) => {
+        onBackgroundVideoResume?.(e.nativeEvent);
+      },
+      [onBackgroundVideoResume],
+    );
+
+    const _onStartupMetrics = useCallback(
+      (e: NativeSyntheticEvent<OnStartupMetricsData>) => {
+        onStartupMetrics?.(e.nativeEvent);
+      },
+      [onStartupMetrics],
+    );
+
     const _onAudioFocusChanged = useCallback(
       (e: NativeSyntheticEvent<OnAudioFocusChangedData>) => {
         onAudioFocusChanged?.(e.nativeEvent);
@@ -729,6 +770,8 @@ const Video = forwardRef<VideoRef, ReactVideoProps>(
         exitPictureInPicture,
         setSource,
         setQueue,
+        prefetchLicense,
+        getLicensePrefetchStats,
       }),
       [
         seek,
@@ -744,7 +787,9 @@ const Video = forwardRef<VideoRef, ReactVideoProps>(
         enterPictureInPicture,
         exitPictureInPicture,
         setSource,
-        setQueue
+        setQueue,
+        prefetchLicense,
+        getLicensePrefetchStats,
       ],
     );
 
@@ -925,6 +970,10 @@ const Video = forwardRef<VideoRef, ReactVideoProps>(
               ? _onPictureInPictureStatusChanged
               : undefined
           }
+          onBackgroundVideoResume={
+            onBackgroundVideoResume ? _onBackgroundVideoResume : undefined
+          }
+          onStartupMetrics={onStartupMetrics ? _onStartupMetrics : undefined}
           onRestoreUserInterfaceForPictureInPictureStop={
             onRestoreUserInterfaceForPictureInPictureStop
           }
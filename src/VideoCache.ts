@@ -0,0 +1,126 @@
+import {DeviceEventEmitter, Platform} from 'react-native';
+
+import NativeVideoManager from './specs/NativeVideoManager';
+import type {CacheStats} from './types';
+
+const CACHE_STATS_EVENT = 'VideoCacheStats';
+
+const errMsgGen = (moduleName: string, propertyName: string) =>
+  `The method or property ${moduleName}.${propertyName} is not available on ${Platform.OS}.`;
+
+export const VideoCache = {
+  async getCacheStats() {
+    if (Platform.OS !== 'android') {
+      throw new Error(errMsgGen('VideoCache', 'getCacheStats'));
+    }
+    return NativeVideoManager.getCacheStats();
+  },
+  /**
+   * Open the streaming cache in background at app start, resolved once it is ready.
+   * Without it, the cache is opened by the first source with bufferConfig.cacheSizeMB.
+   * Players never wait for the cache: they read from network until it is ready.
+   */
+  async initialize(sizeMB: number) {
+    if (Platform.OS !== 'android') {
+      throw new Error(errMsgGen('VideoCache', 'initialize'));
+    }
+    return NativeVideoManager.initializeCache(sizeMB);
+  },
+  /**
+   * Open a cache namespace with its own size, or resize it when already open.
+   * Persistent namespaces are stored in app files and never cleared by the system.
+   */
+  async openCacheNamespace(name: string, sizeMB: number, persistent = false) {
+    if (Platform.OS !== 'android') {
+      throw new Error(errMsgGen('VideoCache', 'openCacheNamespace'));
+    }
+    return NativeVideoManager.openCacheNamespace(name, sizeMB, persistent);
+  },
+  /** Resize a namespace (default: the streaming cache), evicting least recently used content in excess */
+  async setCacheSize(sizeMB: number, namespace?: string) {
+    if (Platform.OS !== 'android') {
+      throw new Error(errMsgGen('VideoCache', 'setCacheSize'));
+    }
+    return NativeVideoManager.setCacheSize(namespace ?? null, sizeMB);
+  },
+  async clearCache(namespace?: string) {
+    if (Platform.OS !== 'android') {
+      throw new Error(errMsgGen('VideoCache', 'clearCache'));
+    }
+    return NativeVideoManager.clearCache(namespace ?? null);
+  },
+  /** Remove a cache key (see contents of getCacheStats), from all namespaces when namespace is not given */
+  async removeCacheContent(key: string, namespace?: string) {
+    if (Platform.OS !== 'android') {
+      throw new Error(errMsgGen('VideoCache', 'removeCacheContent'));
+    }
+    return NativeVideoManager.removeCacheContent(key, namespace ?? null);
+  },
+  /** Release a namespace, its content stays on disk. Players must not use it anymore */
+  async releaseCache(namespace?: string) {
+    if (Platform.OS !== 'android') {
+      throw new Error(errMsgGen('VideoCache', 'releaseCache'));
+    }
+    return NativeVideoManager.releaseCache(namespace ?? null);
+  },
+  /**
+   * Keep cached content of a media (metadata.id of its source) while it is pinned.
+   * Content is associated to its media once it has been played.
+   * Pinned content can use up to 80% of a cache, the least recently used pinned content beyond is evicted
+   * (see pinnedBytesEvicted of getPinStats).
+   */
+  pinContent(mediaId: number | string) {
+    if (Platform.OS !== 'android') {
+      throw new Error(errMsgGen('VideoCache', 'pinContent'));
+    }
+    NativeVideoManager.pinCacheContent(String(mediaId));
+  },
+  unpinContent(mediaId: number | string) {
+    if (Platform.OS !== 'android') {
+      throw new Error(errMsgGen('VideoCache', 'unpinContent'));
+    }
+    NativeVideoManager.unpinCacheContent(String(mediaId));
+  },
+  /**
+   * Evict unpinned content of a media later than plain LRU would,
+   * weight goes from 0 to 1, for example the likelihood that the user resumes it
+   */
+  setContentWeight(mediaId: number | string, weight: number) {
+    if (Platform.OS !== 'android') {
+      throw new Error(errMsgGen('VideoCache', 'setContentWeight'));
+    }
+    NativeVideoManager.setCacheContentWeight(String(mediaId), weight);
+  },
+  /** Pinned versus evictable bytes of a namespace (default: the streaming cache) */
+  async getPinStats(namespace?: string) {
+    if (Platform.OS !== 'android') {
+      throw new Error(errMsgGen('VideoCache', 'getPinStats'));
+    }
+    return NativeVideoManager.getCachePinStats(namespace ?? null);
+  },
+  /**
+   * Receive cache counters every intervalMs (without cache contents).
+   * Only one interval is active, the last listener added sets it.
+   */
+  addCacheStatsListener(
+    listener: (stats: CacheStats) => void,
+    intervalMs: number = 10000,
+  ) {
+    if (Platform.OS !== 'android') {
+      throw new Error(errMsgGen('VideoCache', 'addCacheStatsListener'));
+    }
+    const subscription = DeviceEventEmitter.addListener(
+      CACHE_STATS_EVENT,
+      listener,
+    );
+    NativeVideoManager.setCacheStatsInterval(intervalMs);
+    return {
+      remove() {
+        subscription.remove();
+        if (DeviceEventEmitter.listenerCount(CACHE_STATS_EVENT) === 0) {
+          NativeVideoManager.setCacheStatsInterval(0);
+        }
+      },
+    };
+  },
+};
@@ -26,4 +26,12 @@ export const VideoDecoderProperties = {
     }
     return NativeVideoDecoderInfoModule.isHEVCSupported();
   },
+  async getCodecCapabilities() {
+    if (Platform.OS !== 'android') {
+      throw new Error(
+        errMsgGen('VideoDecoderProperties', 'getCodecCapabilities'),
+      );
+    }
+    return NativeVideoDecoderInfoModule.getCodecCapabilities();
+  },
 };
@@ -1,5 +1,8 @@
 /// <reference lib="dom" />
-import type {VideoDecoderInfoModuleType} from './specs/NativeVideoDecoderInfoModule';
+import type {
+  CodecCapability,
+  VideoDecoderInfoModuleType,
+} from './specs/NativeVideoDecoderInfoModule';
 
 const canPlay = (codec: string): boolean => {
   // most chrome based browser (and safari I think) supports matroska but reports they do not.
@@ -31,4 +34,8 @@ export const VideoDecoderProperties = {
       ? 'software'
       : 'unsupported';
   },
+
+  async getCodecCapabilities(): Promise<Array<CodecCapability>> {
+    return [];
+  },
 } satisfies VideoDecoderInfoModuleType;
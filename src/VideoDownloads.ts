@@ -0,0 +1,95 @@
+import {DeviceEventEmitter, Platform} from 'react-native';
+
+import NativeVideoManager from './specs/NativeVideoManager';
+import type {
+  DownloadOptions,
+  DownloadProgress,
+  ReactVideoSource,
+} from './types';
+import {generateHeaderForNative, resolveAssetSourceForVideo} from './utils';
+
+const DOWNLOAD_EVENT = 'VideoDownloadProgress';
+
+const errMsgGen = (moduleName: string, propertyName: string) =>
+  `The method or property ${moduleName}.${propertyName} is not available on ${Platform.OS}.`;
+
+const checkPlatform = (propertyName: string) => {
+  if (Platform.OS !== 'android') {
+    throw new Error(errMsgGen('VideoDownloads', propertyName));
+  }
+};
+
+/**
+ * Offline downloads, Android only.
+ * They are disabled by default: set `RNVideo_useOfflineDownloads=true` in `android/gradle.properties`
+ * (or `ext.useOfflineDownloads = true` in the root build.gradle) to merge the download foreground service,
+ * its scheduler and the permissions they need (FOREGROUND_SERVICE, FOREGROUND_SERVICE_DATA_SYNC,
+ * RECEIVE_BOOT_COMPLETED, ACCESS_NETWORK_STATE) in the app manifest.
+ * While disabled, `download` rejects and the other commands are ignored.
+ */
+export const VideoDownloads = {
+  /**
+   * Download a network source for offline playback.
+   * Playing the same source (same cache key) then reads the downloaded tracks.
+   */
+  async download(source: ReactVideoSource, options: DownloadOptions = {}) {
+    checkPlatform('download');
+    const resolvedSource = resolveAssetSourceForVideo(source);
+    const drm = resolvedSource.drm;
+    return NativeVideoManager.downloadSource(
+      options.id ?? null,
+      {
+        uri: resolvedSource.uri,
+        type: resolvedSource.type || '',
+        requestHeaders: generateHeaderForNative(resolvedSource.headers),
+        metadata: resolvedSource.metadata,
+        cacheKey: resolvedSource.cacheKey,
+        drm: drm && {
+          type: drm.type,
+          licenseServer: drm.licenseServer,
+          headers: generateHeaderForNative(drm.headers),
+          contentId: drm.contentId,
+          multiDrm: drm.multiDrm,
+          persistLicense: drm.persistLicense,
+        },
+      },
+      {
+        audioOnly: !!options.audioOnly,
+        maxVideoHeight: options.maxVideoHeight ?? 0,
+      },
+    );
+  },
+  removeDownload(id: string) {
+    checkPlatform('removeDownload');
+    NativeVideoManager.removeDownload(id);
+  },
+  pauseDownloads() {
+    checkPlatform('pauseDownloads');
+    NativeVideoManager.pauseDownloads();
+  },
+  resumeDownloads() {
+    checkPlatform('resumeDownloads');
+    NativeVideoManager.resumeDownloads();
+  },
+  /** Downloads wait until requirements are met, a network connection is always required */
+  setRequirements(requirements: {unmeteredNetwork?: boolean; charging?: boolean}) {
+    checkPlatform('setRequirements');
+    NativeVideoManager.setDownloadRequirements(
+      !!requirements.unmeteredNetwork,
+      !!requirements.charging,
+    );
+  },
+  setMaxParallelDownloads(maxParallelDownloads: number) {
+    checkPlatform('setMaxParallelDownloads');
+    NativeVideoManager.setMaxParallelDownloads(maxParallelDownloads);
+  },
+  async getDownloads() {
+    checkPlatform('getDownloads');
+    return NativeVideoManager.getDownloads();
+  },
+  /** Receive state changes of downloads, and their progress every second while downloading */
+  addProgressListener(listener: (download: DownloadProgress) => void) {
+    checkPlatform('addProgressListener');
+    return DeviceEventEmitter.addListener(DOWNLOAD_EVENT, listener);
+  },
+};
@@ -0,0 +1,37 @@
+import {Platform} from 'react-native';
+
+import NativeVideoManager from './specs/NativeVideoManager';
+import type {MediaHttpClientConfig} from './types';
+
+const errMsgGen = (moduleName: string, propertyName: string) =>
+  `The method or property ${moduleName}.${propertyName} is not available on ${Platform.OS}.`;
+
+export const VideoNetwork = {
+  /**
+   * Configure the HTTP client of media requests, separate from the one of JS fetch.
+   * Applied to sources set afterwards.
+   */
+  configure(config: MediaHttpClientConfig) {
+    if (Platform.OS !== 'android') {
+      throw new Error(errMsgGen('VideoNetwork', 'configure'));
+    }
+    NativeVideoManager.configureMediaHttpClient(config);
+  },
+  /**
+   * Resolve DNS and connect to the host of uri ahead of setting a source, for example when a card is focused.
+   * The host of the next item of setQueue is warmed automatically.
+   */
+  async warmConnection(uri: string) {
+    if (Platform.OS !== 'android') {
+      throw new Error(errMsgGen('VideoNetwork', 'warmConnection'));
+    }
+    return NativeVideoManager.warmConnection(uri);
+  },
+  /** Counters of media requests and connection warmups since app start */
+  async getStats() {
+    if (Platform.OS !== 'android') {
+      throw new Error(errMsgGen('VideoNetwork', 'getStats'));
+    }
+    return NativeVideoManager.getMediaHttpStats();
+  },
+};
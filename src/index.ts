@@ -1,5 +1,9 @@
 import Video from './Video';
 export {VideoDecoderProperties} from './VideoDecoderProperties';
+export {VideoCache} from './VideoCache';
+export {VideoDownloads} from './VideoDownloads';
+export {VideoNetwork} from './VideoNetwork';
+export type {CodecCapability} from './specs/NativeVideoDecoderInfoModule';
 export * from './types';
 export {Video};
 export default Video;
@@ -1,5 +1,15 @@
 import {NativeModules} from 'react-native';
-import type {Int32} from 'react-native/Libraries/Types/CodegenTypes';
+import type {Int32, Float} from 'react-native/Libraries/Types/CodegenTypes';
+
+export type CodecCapability = {
+  name: string;
+  mimeType: string;
+  hardwareAccelerated: boolean;
+  maxWidth: Int32; // 0 for audio decoders
+  maxHeight: Int32;
+  maxFrameRate: Float;
+  profileLevels: Array<{profile: Int32; level: Int32}>; // MediaCodecInfo.CodecProfileLevel values
+};
 
 // @TODO rename to "Spec" when applying new arch
 export interface VideoDecoderInfoModuleType {
@@ -10,6 +20,7 @@ export interface VideoDecoderInfoModuleType {
     height: Int32,
   ) => Promise<'unsupported' | 'hardware' | 'software'>;
   isHEVCSupported: () => Promise<'unsupported' | 'hardware' | 'software'>;
+  getCodecCapabilities: () => Promise<Array<CodecCapability>>;
 }
 
 export default NativeModules.VideoDecoderInfoModule as VideoDecoderInfoModuleType;
@@ -4,7 +4,15 @@ import type {
   Float,
   UnsafeObject,
 } from 'react-native/Libraries/Types/CodegenTypes';
-import type {VideoSaveData} from '../types/video-ref';
+import type {
+  CachePinStats,
+  ConnectionWarmResult,
+  CacheStats,
+  DownloadProgress,
+  LicensePrefetchStats,
+  MediaHttpStats,
+  VideoSaveData,
+} from '../types/video-ref';
 
 // @TODO rename to "Spec" when applying new arch
 export interface VideoManagerType {
@@ -26,6 +34,41 @@ export interface VideoManagerType {
     reactTag: Int32,
     source?: UnsafeObject,
   ) => Promise<void>;
+  prefetchLicense: (source?: UnsafeObject) => Promise<void>;
+  getLicensePrefetchStats: () => Promise<LicensePrefetchStats>;
+  getCacheStats: () => Promise<CacheStats>;
+  setCacheStatsInterval: (intervalMs: Int32) => void;
+  initializeCache: (sizeMB: Int32) => Promise<void>;
+  openCacheNamespace: (
+    name: string,
+    sizeMB: Int32,
+    persistent: boolean,
+  ) => Promise<void>;
+  setCacheSize: (namespace: string | null, sizeMB: Int32) => Promise<void>;
+  clearCache: (namespace: string | null) => Promise<void>;
+  removeCacheContent: (key: string, namespace: string | null) => Promise<void>;
+  releaseCache: (namespace: string | null) => Promise<void>;
+  pinCacheContent: (mediaId: string) => void;
+  unpinCacheContent: (mediaId: string) => void;
+  setCacheContentWeight: (mediaId: string, weight: Float) => void;
+  getCachePinStats: (namespace: string | null) => Promise<CachePinStats>;
+  downloadSource: (
+    id: string | null,
+    source: UnsafeObject,
+    options: UnsafeObject,
+  ) => Promise<void>;
+  removeDownload: (id: string) => void;
+  pauseDownloads: () => void;
+  resumeDownloads: () => void;
+  setDownloadRequirements: (
+    unmeteredNetwork: boolean,
+    charging: boolean,
+  ) => void;
+  setMaxParallelDownloads: (maxParallelDownloads: Int32) => void;
+  getDownloads: () => Promise<Array<DownloadProgress>>;
+  configureMediaHttpClient: (config: UnsafeObject) => void;
+  getMediaHttpStats: () => Promise<MediaHttpStats>;
+  warmConnection: (uri: string) => Promise<ConnectionWarmResult>;
   setVolumeCmd: (reactTag: Int32, volume: number) => Promise<void>;
   enterPictureInPictureCmd: (reactTag: number) => Promise<void>;
   exitPictureInPictureCmd: (reactTag: number) => Promise<void>;
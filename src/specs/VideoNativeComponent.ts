@@ -24,6 +24,7 @@ type VideoMetadata = Readonly<{
   subtitle?: string;
   description?: string;
   imageUri?: string;
+  id?: Int32; // Android
 }>;
 
 export type AdsConfig = Readonly<{
@@ -36,6 +37,7 @@ export type VideoSrc = Readonly<{
   isNetwork?: boolean;
   isAsset?: boolean;
   isLocalAssetFile?: boolean;
+  suspendVideoInBackground?: boolean; // Android
   shouldCache?: boolean;
   type?: string;
   mainVer?: Int32;
@@ -48,6 +50,8 @@ export type VideoSrc = Readonly<{
   metadata?: VideoMetadata;
   drm?: Drm;
   cmcd?: NativeCmcdConfiguration; // android
+  cacheKey?: CacheKey; // Android
+  parallelRanges?: ParallelRanges; // Android
   textTracksAllowChunklessPreparation?: boolean; // android
   textTracks?: TextTracks;
   ad?: AdsConfig;
@@ -66,11 +70,12 @@ type Drm = Readonly<{
   type?: DRMType;
   licenseServer?: string;
   headers?: Headers;
-  contentId?: string; // ios
+  contentId?: string; // ios, android
   certificateUrl?: string; // ios
   base64Certificate?: boolean; // ios default: false
   useExternalGetLicense?: boolean; // ios
   multiDrm?: WithDefault<boolean, false>; // android
+  persistLicense?: WithDefault<boolean, false>; // android
   localSourceEncryptionKeyScheme?: string; // ios
 }>;
 
@@ -83,6 +88,16 @@ export type NativeCmcdConfiguration = Readonly<{
   status?: Headers;
 }>;
 
+type CacheKey = Readonly<{
+  stripQueryParameters?: ReadonlyArray<string>;
+  useMediaId?: boolean;
+}>;
+
+type ParallelRanges = Readonly<{
+  maxConcurrency?: Int32;
+  chunkSizeKB?: Int32;
+}>;
+
 type TextTracks = ReadonlyArray<
   Readonly<{
     title: string;
@@ -280,6 +295,22 @@ export type OnPictureInPictureStatusChangedData = Readonly<{
   isActive: boolean;
 }>;
 
+export type OnBackgroundVideoResumeData = Readonly<{
+  resumeDuration: Float; // milliseconds
+}>;
+
+// phase durations in milliseconds, -1 when the phase did not happen
+export type OnStartupMetricsData = Readonly<{
+  total: Float;
+  initializePlayer: Float;
+  playerConnection: Float;
+  playerCreation: Float;
+  drm: Float;
+  firstLoad: Float;
+  ready: Float;
+  firstFrame: Float;
+}>;
+
 type OnReceiveAdEventData = Readonly<{
   data?: {};
   event: WithDefault<string, 'AD_BREAK_ENDED'>;
@@ -346,6 +377,7 @@ export interface VideoNativeProps extends ViewProps {
   filterEnabled?: boolean;
   volume?: Float; // default 1.0
   playInBackground?: boolean;
+  audioOnly?: boolean; // Android
   preventsDisplaySleepDuringVideoPlayback?: boolean;
   preferredForwardBufferDuration?: Float; //ios, 0
   playWhenInactive?: boolean; // ios, false
@@ -365,6 +397,7 @@ export interface VideoNativeProps extends ViewProps {
   focusable?: boolean; // Android
   hideShutterView?: boolean; //	Android
   reportBandwidth?: boolean; //Android
+  reportStartupMetrics?: boolean; //Android
   subtitleStyle?: SubtitleStyle; // android
   viewType?: Int32; // Android
   bufferingStrategy?: BufferingStrategyType; // Android
@@ -392,6 +425,8 @@ export interface VideoNativeProps extends ViewProps {
   onGetLicense?: DirectEventHandler<OnGetLicenseData>;
   onPictureInPictureStatusChanged?: DirectEventHandler<OnPictureInPictureStatusChangedData>;
   onRestoreUserInterfaceForPictureInPictureStop?: DirectEventHandler<{}>;
+  onBackgroundVideoResume?: DirectEventHandler<OnBackgroundVideoResumeData>; // android
+  onStartupMetrics?: DirectEventHandler<OnStartupMetricsData>; // android
   onReceiveAdEvent?: DirectEventHandler<OnReceiveAdEventData>;
   onVideoPlaybackStateChanged?: DirectEventHandler<OnPlaybackStateChangedData>; // android only
   onVideoIdle?: DirectEventHandler<{}>; // android only (nowhere in document, so do not use as props. just type declaration)
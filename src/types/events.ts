@@ -2,6 +2,7 @@ import type {WithDefault} from 'react-native/Libraries/Types/CodegenTypes';
 import type {
   OnAudioFocusChangedData,
   OnAudioTracksData,
+  OnBackgroundVideoResumeData,
   OnBandwidthUpdateData,
   OnBufferData,
   OnControlsVisibilityChange,
@@ -12,6 +13,7 @@ import type {
   OnPlaybackStateChangedData,
   OnProgressData,
   OnSeekData,
+  OnStartupMetricsData,
   OnTextTrackDataChangedData,
   OnTimedMetadataData,
   OnVideoAspectRatioData,
@@ -239,6 +241,8 @@ export interface ReactVideoEvents {
   onAudioFocusChanged?: (e: OnAudioFocusChangedData) => void; // Android
   onIdle?: () => void; // Android
   onBandwidthUpdate?: (e: OnBandwidthUpdateData) => void; //Android
+  onBackgroundVideoResume?: (e: OnBackgroundVideoResumeData) => void; //Android
+  onStartupMetrics?: (e: OnStartupMetricsData) => void; //Android
   onBuffer?: (e: OnBufferData) => void; //Android, iOS
   onControlsVisibilityChange?: (e: OnControlsVisibilityChange) => void; // Android, iOS
   onEnd?: () => void; //All
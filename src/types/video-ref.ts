@@ -5,6 +5,119 @@ export type VideoSaveData = {
   uri: string;
 };
 
+export type LicensePrefetchStats = {
+  requested: number;
+  completed: number;
+  failed: number;
+  hits: number;
+  late: number;
+  misses: number;
+};
+
+export type CacheSessionStats = {
+  id: number; // native tag of the view
+  cacheBytesRead: number;
+  networkBytesRead: number;
+};
+
+export type CachedContent = {
+  key: string;
+  cachedBytes: number;
+  contentLength: number; // -1 when unknown
+  spans: Array<{position: number; length: number}>;
+};
+
+export type CacheStats = {
+  cacheBytesRead: number;
+  networkBytesRead: number;
+  cacheIgnored: number;
+  evictions: number;
+  evictedBytes: number;
+  cachedBytes: number;
+  sessions: Array<CacheSessionStats>;
+  memory: {
+    size: number;
+    maxSize: number;
+    hits: number;
+    misses: number;
+    hitBytes: number;
+    storedBytes: number;
+    evictions: number;
+    evictedBytes: number;
+  };
+  contents?: Array<CachedContent>; // only returned by getCacheStats
+};
+
+export type CachePinStats = {
+  pinnedBytes: number;
+  evictableBytes: number;
+  pinnedMediaIds: Array<string>;
+  /** pinned bytes evicted since app start because pinned content exceeded its share of a cache */
+  pinnedBytesEvicted: number;
+};
+
+export type DownloadState =
+  | 'queued'
+  | 'stopped'
+  | 'downloading'
+  | 'completed'
+  | 'failed'
+  | 'removing'
+  | 'restarting';
+
+export type DownloadProgress = {
+  id: string;
+  uri: string;
+  title?: string;
+  state: DownloadState;
+  percentDownloaded: number; // -1 when unknown
+  bytesDownloaded: number;
+  contentLength: number; // -1 when unknown
+  stopReason: number;
+  failureReason: number;
+};
+
+export type DownloadOptions = {
+  id?: string; // default: source uri
+  audioOnly?: boolean;
+  maxVideoHeight?: number; // cap of the downloaded video rendition of adaptive streams
+};
+
+export type MediaHttpClientConfig = {
+  maxRequests?: number; // default 64
+  maxRequestsPerHost?: number; // default 16
+  maxIdleConnections?: number; // default 16
+  keepAliveMs?: number; // default 5 minutes
+  connectTimeoutMs?: number; // default 8000
+  readTimeoutMs?: number; // default 10000
+  writeTimeoutMs?: number; // default 10000
+  preferHttp2?: boolean; // default true
+};
+
+export type MediaHttpStats = {
+  calls: number;
+  failedCalls: number;
+  connectionsOpened: number;
+  connectionsReused: number;
+  http2Connections: number;
+  dnsTimeMs: number; // sum over calls
+  connectTimeMs: number; // sum over calls
+  timeToFirstByteMs: number; // sum over calls
+  bytesReceived: number;
+  idleConnections: number;
+  connections: number;
+  warmups: number;
+  warmupsDeduplicated: number;
+  warmupsFailed: number;
+  connectTimeSavedMs: number; // connect time of warmed connections reused by media requests
+};
+
+export type ConnectionWarmResult = {
+  host: string;
+  connectTimeMs: number; // DNS, TCP and TLS time done ahead of the first request
+  alreadyConnected: boolean;
+};
+
 export interface VideoRef {
   seek: (time: number, tolerance?: number) => void;
   resume: () => void;
@@ -20,6 +133,8 @@ export interface VideoRef {
   setFullScreen: (fullScreen: boolean) => void;
   setSource: (source?: ReactVideoSource) => void;
   setQueue: (queue?: ReactVideoSource[]) => void;
+  prefetchLicense?: (source: ReactVideoSource) => void; // Android
+  getLicensePrefetchStats?: () => Promise<LicensePrefetchStats | undefined>; // Android
   enterPictureInPicture: () => void;
   exitPictureInPicture: () => void;
   nativeHtmlVideoRef?: RefObject<HTMLVideoElement | null>; // web only
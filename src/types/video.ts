@@ -26,6 +26,7 @@ export type ReactVideoSourceProperties = {
   isNetwork?: boolean;
   isAsset?: boolean;
   isLocalAssetFile?: boolean;
+  suspendVideoInBackground?: boolean; // Android
   shouldCache?: boolean;
   type?: string;
   mainVer?: number;
@@ -38,6 +39,8 @@ export type ReactVideoSourceProperties = {
   metadata?: VideoMetadata;
   drm?: Drm;
   cmcd?: Cmcd; // android
+  cacheKey?: CacheKey; // Android
+  parallelRanges?: ParallelRanges; // Android, progressive content only
   textTracksAllowChunklessPreparation?: boolean;
   textTracks?: TextTracks;
   ad?: AdConfig;
@@ -64,6 +67,7 @@ export type VideoMetadata = Readonly<{
   description?: string;
   artist?: string;
   imageUri?: string;
+  id?: number; // Android
 }>;
 
 export type DebugConfig = Readonly<{
@@ -87,10 +91,11 @@ export type Drm = Readonly<{
   type?: DRMType;
   licenseServer?: string;
   headers?: Headers;
-  contentId?: string; // ios
+  contentId?: string; // ios, android
   certificateUrl?: string; // ios
   base64Certificate?: boolean; // ios default: false
   multiDrm?: boolean; // android
+  persistLicense?: boolean; // android
   localSourceEncryptionKeyScheme?: string; // ios
   /* eslint-disable @typescript-eslint/no-unused-vars */
   getLicense?: (
@@ -123,6 +128,16 @@ export type CmcdConfiguration = Readonly<{
 }>;
 export type Cmcd = boolean | CmcdConfiguration;
 
+export type CacheKey = Readonly<{
+  stripQueryParameters?: string[]; // signed URL parameters ignored in the cache key
+  useMediaId?: boolean; // default: false, use metadata id instead of the host
+}>;
+
+export type ParallelRanges = Readonly<{
+  maxConcurrency?: number; // default: 4, concurrent range requests
+  chunkSizeKB?: number; // default: 512, initial range size, adapted to the throughput
+}>;
+
 export enum BufferingStrategyType {
   DEFAULT = 'Default',
   DISABLE_BUFFERING = 'DisableBuffering',
@@ -319,6 +334,7 @@ export interface ReactVideoProps extends ReactVideoEvents, ViewProps {
   paused?: boolean;
   enterPictureInPictureOnLeave?: boolean;
   playInBackground?: boolean;
+  audioOnly?: boolean; // Android
   playWhenInactive?: boolean; // iOS
   poster?: string | ReactVideoPoster; // string is deprecated
   /** @deprecated use **resizeMode** key in **poster** props instead */
@@ -330,6 +346,7 @@ export interface ReactVideoProps extends ReactVideoEvents, ViewProps {
   renderLoader?: ReactNode | ((arg0: ReactVideoRenderLoaderProps) => ReactNode);
   repeat?: boolean;
   reportBandwidth?: boolean; //Android
+  reportStartupMetrics?: boolean; //Android
   resizeMode?: EnumValues<VideoResizeMode>;
   showNotificationControls?: boolean; // Android, iOS
   selectedAudioTrack?: SelectedTrack;